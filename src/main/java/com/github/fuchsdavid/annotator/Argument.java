@@ -18,6 +18,8 @@ package com.github.fuchsdavid.annotator;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.sql.Timestamp;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -31,6 +33,36 @@ public class Argument {
     private static final Logger LOGGER = Logger.getLogger(Argument.class.getName());
     private static final String SPARQL_ENDPOINT = "-SPARQLendpoint";
     private static final String PORT = "-port";
+    private static final String EXECUTOR = "-executor";
+    private static final String THREADS = "-threads";
+    private static final String QUEUE_SIZE = "-queueSize";
+    private static final String PREFETCH = "-prefetch";
+    private static final String PREFETCH_THREADS = "-prefetchThreads";
+    private static final String COUNT_TTL = "-countTTL";
+    private static final String BATCH_SIZE = "-batchSize";
+    private static final String TRIPLE_CACHE_SIZE = "-tripleCacheSize";
+    private static final String TRIPLE_CACHE_DIR = "-tripleCacheDir";
+    private static final String QUERY_TIMEOUT = "-queryTimeout";
+    private static final String QUERY_TOTAL_TIMEOUT = "-queryTotalTimeout";
+    private static final String MAX_CONNECTIONS = "-maxConnections";
+    private static final String JOURNAL = "-journal";
+    private static final String WRITE_BATCH_SIZE = "-writeBatchSize";
+    private static final String WRITE_DELAY = "-writeDelay";
+    private static final String SESSION_TIMEOUT = "-sessionTimeout";
+    private static final String SESSION_MODELS = "-sessionModels";
+    private static final String SESSION_TRIPLES = "-sessionTriples";
+    private static final String STREAM_THRESHOLD = "-streamThreshold";
+    private static final String STATIC_MAX_AGE = "-staticMaxAge";
+    private static final String WEB_ROOT = "-webRoot";
+    private static final String TDB2 = "-tdb2";
+    private static final String BINARY_RDF = "-binaryRDF";
+    private static final String RETRY_ATTEMPTS = "-retryAttempts";
+    private static final String RETRY_BACKOFF = "-retryBackoff";
+    private static final String BREAKER_THRESHOLD = "-breakerThreshold";
+    private static final String BREAKER_OPEN_TIME = "-breakerOpenTime";
+    private static final String MIN_TRIPLES = "-minTriples";
+    private static final String REDUNDANCY = "-redundancy";
+    private static final String LEASE_TIME = "-leaseTime";
     
     
     /**
@@ -48,6 +80,74 @@ public class Argument {
                                           break;
                     case PORT: Main.port = Integer.parseInt(args[++i]);
                                            break;
+                    case EXECUTOR: Main.executorMode = ExecutorMode.parse(args[++i]);
+                                   break;
+                    case THREADS: Main.threads = parsePositiveInteger(args[++i]);
+                                  break;
+                    case QUEUE_SIZE: Main.queueSize = parsePositiveInteger(args[++i]);
+                                     break;
+                    case PREFETCH: Main.prefetchDepth = Integer.parseInt(args[++i]);
+                                   if(Main.prefetchDepth < 0)
+                                       throw new IllegalArgumentException("Prefetch depth must not be negative.");
+                                   break;
+                    case PREFETCH_THREADS: Main.prefetchThreads = parsePositiveInteger(args[++i]);
+                                           break;
+                    case COUNT_TTL: Main.countTTL = parsePositiveInteger(args[++i]);
+                                    break;
+                    case BATCH_SIZE: Main.batchSize = parsePositiveInteger(args[++i]);
+                                     break;
+                    case TRIPLE_CACHE_SIZE: Main.tripleCacheSize = parsePositiveLong(args[++i]);
+                                            break;
+                    case TRIPLE_CACHE_DIR: Main.tripleCacheDir = Paths.get(args[++i]);
+                                           break;
+                    case QUERY_TIMEOUT: Main.queryTimeout = parsePositiveInteger(args[++i]);
+                                        break;
+                    case QUERY_TOTAL_TIMEOUT: Main.queryTotalTimeout = parsePositiveInteger(args[++i]);
+                                              break;
+                    case MAX_CONNECTIONS: Main.maxConnections = parsePositiveInteger(args[++i]);
+                                          break;
+                    case JOURNAL: Main.journal = Paths.get(args[++i]);
+                                  break;
+                    case WRITE_BATCH_SIZE: Main.writeBatchSize = parsePositiveInteger(args[++i]);
+                                           break;
+                    case WRITE_DELAY: Main.writeDelay = parsePositiveInteger(args[++i]);
+                                      break;
+                    case SESSION_TIMEOUT: Main.sessionTimeout = parsePositiveInteger(args[++i]);
+                                          break;
+                    case SESSION_MODELS: Main.sessionModels = parsePositiveInteger(args[++i]);
+                                         break;
+                    case SESSION_TRIPLES: Main.sessionTriples = parsePositiveLong(args[++i]);
+                                          break;
+                    case STREAM_THRESHOLD: Main.streamThreshold = Integer.parseInt(args[++i]);
+                                           if(Main.streamThreshold < 0)
+                                               throw new IllegalArgumentException("Stream threshold must not be negative.");
+                                           break;
+                    case STATIC_MAX_AGE: Main.staticMaxAge = Integer.parseInt(args[++i]);
+                                         if(Main.staticMaxAge < 0)
+                                             throw new IllegalArgumentException("Maximum age must not be negative.");
+                                         break;
+                    case WEB_ROOT: Main.webRoot = Paths.get(args[++i]);
+                                   if(!Files.isDirectory(Main.webRoot))
+                                       throw new IllegalArgumentException("Web root " + Main.webRoot + " is not a directory.");
+                                   break;
+                    case TDB2: Main.tdb2 = Paths.get(args[++i]);
+                               break;
+                    case BINARY_RDF: Main.binaryRDF = parseBoolean(args[++i]);
+                                     break;
+                    case RETRY_ATTEMPTS: Main.retryAttempts = parsePositiveInteger(args[++i]);
+                                         break;
+                    case RETRY_BACKOFF: Main.retryBackoff = parsePositiveInteger(args[++i]);
+                                        break;
+                    case BREAKER_THRESHOLD: Main.breakerThreshold = parsePositiveInteger(args[++i]);
+                                            break;
+                    case BREAKER_OPEN_TIME: Main.breakerOpenTime = parsePositiveInteger(args[++i]);
+                                            break;
+                    case MIN_TRIPLES: Main.minTriples = parsePositiveInteger(args[++i]);
+                                      break;
+                    case REDUNDANCY: Main.redundancy = parsePositiveInteger(args[++i]);
+                                     break;
+                    case LEASE_TIME: Main.leaseTime = parsePositiveInteger(args[++i]);
+                                     break;
                     default: throw new IllegalArgumentException("Unknown command line parameter.");
                 }
             }
@@ -57,5 +157,43 @@ public class Argument {
         }
     }
     
+    /**
+     * Parse integer argument, which must be greater than zero.
+     * 
+     * @param value
+     * @return 
+     */
+    private static int parsePositiveInteger(String value){
+        int i = Integer.parseInt(value);
+        if(i <= 0)
+            throw new IllegalArgumentException("Value " + value + " must be a positive integer.");
+        return i;
+    }
+    
+    /**
+     * Parse long integer argument, which must be greater than zero.
+     * 
+     * @param value
+     * @return 
+     */
+    private static long parsePositiveLong(String value){
+        long l = Long.parseLong(value);
+        if(l <= 0)
+            throw new IllegalArgumentException("Value " + value + " must be a positive integer.");
+        return l;
+    }
+    
+    /**
+     * Parse boolean argument, which must be either true or false.
+     * 
+     * @param value
+     * @return 
+     */
+    private static boolean parseBoolean(String value){
+        if(!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false"))
+            throw new IllegalArgumentException("Value " + value + " must be either true or false.");
+        return Boolean.parseBoolean(value);
+    }
+    
     private Argument(){}
 }
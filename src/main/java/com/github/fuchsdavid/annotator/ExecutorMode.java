@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator;
+
+import java.sql.Timestamp;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Modes in which the HTTP server can dispatch incoming requests.
+ * 
+ * @author David Fuchs
+ */
+public enum ExecutorMode {
+    /**
+     * All requests are handled on the dispatcher thread of the HTTP server.
+     */
+    SINGLE,
+    /**
+     * Requests are handled by a bounded pool of platform threads.
+     */
+    POOL,
+    /**
+     * Every request is handled by a new virtual thread.
+     */
+    VIRTUAL;
+    
+    private static final Logger LOGGER = Logger.getLogger(ExecutorMode.class.getName());
+    
+    /**
+     * Parse executor mode from a command line argument.
+     * 
+     * @param mode
+     * @return 
+     */
+    public static ExecutorMode parse(String mode){
+        return valueOf(mode.toUpperCase());
+    }
+    
+    /**
+     * Create executor which the HTTP server uses to handle requests.
+     * 
+     * @param threads number of threads of the bounded pool
+     * @param queueSize number of requests which can wait for a free thread
+     * @return executor or null if the requests are to be handled by the dispatcher thread
+     */
+    public Executor createExecutor(int threads, int queueSize){
+        switch(this){
+            case POOL:    return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                                                        new ArrayBlockingQueue<>(queueSize),
+                                                        namedThreadFactory("http-worker-", false),
+                                                        new ThreadPoolExecutor.CallerRunsPolicy());
+            case VIRTUAL: try {
+                              return (ExecutorService) Executors.class
+                                                                .getMethod("newVirtualThreadPerTaskExecutor")
+                                                                .invoke(null);
+                          }
+                          catch (ReflectiveOperationException ex) {
+                              LOGGER.log(Level.WARNING, "{0}: Virtual threads are not supported by this JVM, "
+                                                        + "falling back to a cached thread pool.",
+                                         new Timestamp(System.currentTimeMillis()));
+                              return Executors.newCachedThreadPool(namedThreadFactory("http-worker-", false));
+                          }
+            default:      return null;
+        }
+    }
+    
+    /**
+     * Create thread factory producing threads with a common name prefix.
+     * 
+     * @param prefix
+     * @param daemon whether the threads should not prevent the JVM from exiting
+     * @return 
+     */
+    public static ThreadFactory namedThreadFactory(String prefix, boolean daemon){
+        final AtomicInteger counter = new AtomicInteger();
+        return (Runnable r) -> {
+            Thread t = new Thread(r, prefix + counter.incrementAndGet());
+            t.setDaemon(daemon);
+            return t;
+        };
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator;
+
+import java.util.Arrays;
+
+/**
+ * Navigation history with a cursor addressed by absolute orders.
+ *
+ * The most recent entries are kept in a ring buffer of fixed capacity, older
+ * ones remember only the IRI of their resource. IRIs of all entries are kept
+ * until the history is cleared, since the client may navigate back to any of them
+ * and annotations refer to resources by their order, while every resource
+ * of the history holds a lease until the annotations are submitted. The history
+ * starts anew with each submission, which is what bounds it.
+ * Navigation does not allocate. Instances are not thread-safe.
+ *
+ * @author David Fuchs
+ * @param <T> type of the entries
+ */
+public class History<T> {
+    private final Object[] ring;
+    private String[] subjects = new String[16];
+    private int size = 0;
+    private int first = 0;
+    private int cursor = 0;
+
+    /**
+     * Create empty history.
+     *
+     * @param capacity maximum number of entries kept
+     */
+    public History(int capacity){
+        if(capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be a positive integer.");
+        ring = new Object[capacity];
+    }
+
+    /**
+     * Get number of entries appended to the history.
+     *
+     * @return
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Check if the history is empty.
+     *
+     * @return
+     */
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    /**
+     * Get current position of the cursor.
+     *
+     * @return
+     */
+    public int cursor(){
+        return cursor;
+    }
+
+    /**
+     * Check if the cursor points to the last entry.
+     *
+     * @return
+     */
+    public boolean atEnd(){
+        return cursor >= size - 1;
+    }
+
+    /**
+     * Get entry with given order.
+     *
+     * @param order
+     * @return entry or null if there is no such entry or it has been evicted
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int order){
+        return (order >= first && order < size ? (T)ring[order % ring.length] : null);
+    }
+
+    /**
+     * Get IRI of the resource of the entry with given order.
+     *
+     * @param order
+     * @return IRI or null if there is no such entry
+     */
+    public String getSubject(int order){
+        return (order >= 0 && order < size ? subjects[order] : null);
+    }
+
+    /**
+     * Append entry and move the cursor to it.
+     *
+     * @param entry
+     * @param subject IRI of the resource of the entry
+     * @return entry evicted to make room for the new one or null
+     */
+    public T append(T entry, String subject){
+        T evicted = (size - first == ring.length ? evict() : null);
+        if(size == subjects.length)
+            subjects = Arrays.copyOf(subjects, 2 * size);
+        ring[size % ring.length] = entry;
+        subjects[size] = subject;
+        cursor = size++;
+        return evicted;
+    }
+
+    /**
+     * Move the cursor forward unless it points to the last entry.
+     *
+     * @return entry at the new position or null if it has been evicted
+     */
+    public T forward(){
+        if(!atEnd()) cursor++;
+        return get(cursor);
+    }
+
+    /**
+     * Move the cursor backward unless it points to the first entry.
+     *
+     * @return entry at the new position or null if it has been evicted
+     */
+    public T backward(){
+        if(cursor > 0) cursor--;
+        return get(cursor);
+    }
+
+    /**
+     * Remove the last entry and move the cursor back from it.
+     *
+     * @return removed entry or null if the history is empty or it had been evicted
+     */
+    public T removeLast(){
+        if(size == 0) return null;
+        T removed = get(size - 1);
+        ring[--size % ring.length] = null;
+        subjects[size] = null;
+        first = Math.min(first, size);
+        if(cursor > 0) cursor--;
+        return removed;
+    }
+
+    /**
+     * Evict the oldest entry kept unless the cursor points to it.
+     *
+     * @return evicted entry or null if nothing could be evicted
+     */
+    public T evictOldest(){
+        return (first < cursor ? evict() : null);
+    }
+
+    /**
+     * Evict the oldest entry kept.
+     *
+     * @return evicted entry
+     */
+    @SuppressWarnings("unchecked")
+    private T evict(){
+        T evicted = (T)ring[first % ring.length];
+        ring[first++ % ring.length] = null;
+        return evicted;
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public void clear(){
+        Arrays.fill(ring, null);
+        Arrays.fill(subjects, 0, size, null);
+        size = first = cursor = 0;
+    }
+}
@@ -16,21 +16,26 @@
  */
 package com.github.fuchsdavid.annotator;
 
+import com.github.fuchsdavid.annotator.logic.AnnotationWriter;
 import com.github.fuchsdavid.annotator.logic.Annotator;
+import com.github.fuchsdavid.annotator.logic.BatchSampler;
+import com.github.fuchsdavid.annotator.logic.PageTemplate;
 import com.github.fuchsdavid.annotator.logic.RDFUtilitites;
+import com.github.fuchsdavid.annotator.logic.StaticResource;
+import com.github.fuchsdavid.annotator.logic.WebRoot;
 import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.sql.Timestamp;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Random;
 import java.util.Scanner;
 import java.util.logging.Level;
@@ -42,12 +47,14 @@ import javax.json.JsonBuilderFactory;
 import javax.json.JsonObject;
 import javax.json.JsonStructure;
 import javax.json.JsonValue.ValueType;
+import javax.json.stream.JsonGeneratorFactory;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
 import org.apache.jena.query.ARQ;
-import org.apache.jena.rdf.model.Model;
 import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
 
@@ -66,21 +73,48 @@ public class Main {
     public static final String PREFIXES = "/config/known_prefixes.conf";
     public static final Random RNG = new Random();
     
-    public static final Map<String,Collection<Model>> ID2MODEL_LIST = new HashMap<>();
-    public static final Map<String,Position> ID2POSITION = new HashMap<>();
-    public static final Map<String,Boolean> EMAIL2STATE = new HashMap<>();
-    public static final Map<String,User> ID2USER = new HashMap<>();
-    public static final Map<String,User> EMAIL2USER = new HashMap<>();
-    public static final Map<String,Document> CACHED_FILES = new HashMap<>();
+    public static final SessionStore SESSIONS = new SessionStore();
     
     public static final TransformerFactory TF = TransformerFactory.newInstance();
     public static final JsonBuilderFactory JF = Json.createBuilderFactory(null);
+    public static final JsonGeneratorFactory JG = Json.createGeneratorFactory(null);
     
     public static String SPARQLendpoint;
     public static int port = 8080;
+    public static ExecutorMode executorMode = ExecutorMode.POOL;
+    public static int threads = 4 * Runtime.getRuntime().availableProcessors();
+    public static int queueSize = 256;
+    public static int prefetchDepth = 3;
+    public static int prefetchThreads = 4;
+    public static int countTTL = 60;
+    public static int batchSize = 16;
+    public static long tripleCacheSize = 200000;
+    public static Path tripleCacheDir;
+    public static long queryTimeout = 1000;
+    public static long queryTotalTimeout = 2000;
+    public static int maxConnections = 20;
+    public static Path journal = Paths.get("./journal/annotations.journal");
+    public static int writeBatchSize = 32;
+    public static long writeDelay = 500;
+    public static long sessionTimeout = 1800;
+    public static int sessionModels = 32;
+    public static long sessionTriples = 1000000;
+    public static int streamThreshold = 1000;
+    public static int staticMaxAge = 3600;
+    public static Path webRoot;
+    public static Path tdb2;
+    public static boolean binaryRDF = true;
+    public static int retryAttempts = 3;
+    public static long retryBackoff = 100;
+    public static int breakerThreshold = 5;
+    public static long breakerOpenTime = 10000;
+    public static int minTriples = 2;
+    public static int redundancy = 1;
+    public static long leaseTime = 1800;
     public static PasswordHasher PWH;
     
-    public static DocumentBuilder DOCUMENT_BUILDER;
+    public static PageTemplate INDEX_TEMPLATE;
+    public static StaticResource AUTH_PAGE;
     public static MessageDigest MD;
     
     private static HttpServer server;
@@ -101,19 +135,24 @@ public class Main {
                 String salt = users.get(i).asJsonObject().getValue("/salt").toString().replace("\"", "");
                 String passwordHash = users.get(i).asJsonObject().getValue("/passwordHash").toString().replace("\"", "");
                 User u = new User(email, salt, passwordHash,true);
-                EMAIL2USER.put(email, u);
+                SESSIONS.addUser(u);
             }
             passwordFileIn.close();
             LOGGER.log(Level.INFO, "{0}: Loaded user credentials from storage.",
                        new Timestamp(System.currentTimeMillis()));
-            DOCUMENT_BUILDER = DocumentBuilderFactory.newInstance().newDocumentBuilder();
             SPARQLendpoint = (new URL("http://localhost:3030/fuseki")).toExternalForm();
-            CACHED_FILES.put(INDEX,DOCUMENT_BUILDER.parse(Main.class.getResourceAsStream(INDEX)));
-            CACHED_FILES.put(AUTH,DOCUMENT_BUILDER.parse(Main.class.getResourceAsStream(AUTH)));
+            INDEX_TEMPLATE = PageTemplate.compile(Main.class.getResourceAsStream(INDEX),
+                                                  "</caption>", "</tbody>", "</span>", "</body>");
+            DocumentBuilder documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            Document auth = documentBuilder.parse(Main.class.getResourceAsStream(AUTH));
+            ByteArrayOutputStream renderedAuth = new ByteArrayOutputStream();
+            TF.newTransformer().transform(new DOMSource(auth), new StreamResult(renderedAuth));
+            AUTH_PAGE = StaticResource.of(renderedAuth.toByteArray(), "application/xhtml+xml",
+                                          StaticResource.lastModified(AUTH), "no-cache");
             MD = MessageDigest.getInstance("SHA-256");
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 final JsonArrayBuilder u = Json.createArrayBuilder();
-                EMAIL2USER.values().forEach((User user) -> {
+                SESSIONS.getUsers().forEach((User user) -> {
                     u.add(user.serialize());
                 });
                 JsonObject r = Json.createObjectBuilder().add("users", u.build()).build();
@@ -158,6 +197,26 @@ public class Main {
      */
     public static void main(String[] args){
         Argument.parseArguments(args);
+        try{
+            AnnotationWriter.start();
+        }
+        catch(IOException ex){
+            LOGGER.log(Level.SEVERE, "{0}: Failed to open journal: " + ex.getMessage(),
+                       new Timestamp(System.currentTimeMillis()));
+            System.exit(1);
+        }
+        try{
+            WebRoot.start();
+        }
+        catch(IOException ex){
+            LOGGER.log(Level.SEVERE, "{0}: Failed to open web root: " + ex.getMessage(),
+                       new Timestamp(System.currentTimeMillis()));
+            System.exit(1);
+        }
+        SESSIONS.start();
+        Thread indexLoader = new Thread(BatchSampler::loadIndex, "index-loader");
+        indexLoader.setDaemon(true);
+        indexLoader.start();
         if((server = Annotator.runHTTPServer()) == null) System.exit(1);
         LOGGER.log(Level.INFO, "{0}: Started HTTP server on port " + port + ".", new Timestamp(System.currentTimeMillis()));
     }
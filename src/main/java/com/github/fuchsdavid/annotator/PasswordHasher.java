@@ -52,7 +52,7 @@ public class PasswordHasher {
      * @param password
      * @return 
      */
-    public String[] getHash(String password){
+    public synchronized String[] getHash(String password){
         String[] saltAndHash = new String[2];
         String salt = "";
         saltAndHash[0] = salt += RNG.nextInt();
@@ -68,7 +68,7 @@ public class PasswordHasher {
      * @param password
      * @return 
      */
-    public String getHash(String salt, String password){
+    public synchronized String getHash(String salt, String password){
         return new String(MD.digest((salt + password).getBytes()));
     }
 }
@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator;
+
+import com.github.fuchsdavid.annotator.logic.LeaseScheduler;
+import com.github.fuchsdavid.annotator.logic.ResourceSnapshot;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * State of a single client session: the logged in user and the history of
+ * resources shown to him together with the current position in it.
+ *
+ * History is guarded by the session itself, so concurrent requests of
+ * different sessions never contend with each other. Only the most recent
+ * snapshots are kept, older entries of the history remember just the IRI
+ * of the resource, so that orders used by the client stay valid. Only the JSON
+ * of the snapshot served last is kept and it counts like another copy of its triples.
+ *
+ * @author David Fuchs
+ */
+public class Session {
+    public final String id;
+
+    private final SessionStore store;
+    private volatile User user;
+    private volatile long lastAccess = System.currentTimeMillis();
+    private final History<ResourceSnapshot> history = new History<>(Main.sessionModels);
+    private ResourceSnapshot serialized;
+    private byte[] serializedJson;
+
+    /**
+     * Create new empty session.
+     *
+     * @param id
+     * @param store store accounting for triples kept by the session
+     */
+    Session(String id, SessionStore store){
+        this.id = id;
+        this.store = store;
+    }
+
+    /**
+     * Get user logged in within this session.
+     *
+     * @return user or null if nobody is logged in
+     */
+    public User getUser(){
+        return user;
+    }
+
+    /**
+     * Set user logged in within this session.
+     *
+     * @param user
+     */
+    public void setUser(User user){
+        this.user = user;
+    }
+
+    /**
+     * Check if the session belongs to a logged in user.
+     *
+     * @return
+     */
+    public boolean isLoggedIn(){
+        User u = user;
+        return u != null && u.isLoggedIn();
+    }
+
+    /**
+     * Record that the session has been used.
+     */
+    void touch(){
+        touch(System.currentTimeMillis());
+    }
+
+    void touch(long now){
+        lastAccess = now;
+    }
+
+    /**
+     * Get time of the last use of the session.
+     *
+     * @return
+     */
+    long getLastAccess(){
+        return lastAccess;
+    }
+
+    /**
+     * Get current position in the history.
+     *
+     * @return
+     */
+    public synchronized int getPosition(){
+        return history.cursor();
+    }
+
+    /**
+     * Check if the history contains any snapshot.
+     *
+     * @return
+     */
+    public synchronized boolean hasHistory(){
+        return !history.isEmpty();
+    }
+
+    /**
+     * Start a new history with a single snapshot.
+     *
+     * @param m
+     */
+    public void resetHistory(ResourceSnapshot m){
+        synchronized(this){
+            clear();
+            release(history.append(m, m.getSubject()));
+            store.retain(m.size());
+        }
+        store.enforceBudget();
+    }
+
+    /**
+     * Drop the whole history, so that the next request for content starts a new one.
+     */
+    public void clearHistory(){
+        clear();
+    }
+    
+    /**
+     * Get snapshot at the current position.
+     *
+     * @return snapshot or null if the history is empty or the snapshot has been evicted
+     */
+    public synchronized ResourceSnapshot current(){
+        return history.get(history.cursor());
+    }
+
+    /**
+     * Get snapshot with given order in the history.
+     *
+     * @param order
+     * @return snapshot or null if there is no such snapshot or it has been evicted
+     */
+    public synchronized ResourceSnapshot get(int order){
+        return history.get(order);
+    }
+
+    /**
+     * Get triples of a snapshot serialized as JSON, reusing the serialization
+     * if the same snapshot has been served last.
+     *
+     * @param m
+     * @return JSON array of triples encoded in UTF-8
+     */
+    public byte[] getTriplesJson(ResourceSnapshot m){
+        synchronized(this){
+            if(m == serialized) return serializedJson;
+        }
+        byte[] json = m.getTriplesJson();
+        synchronized(this){
+            releaseJson();
+            serialized = m;
+            serializedJson = json;
+            store.retain(m.size());
+        }
+        store.enforceBudget();
+        return json;
+    }
+
+    /**
+     * Get IRI of the resource with given order in the history.
+     *
+     * @param order
+     * @return IRI or null if there is no such resource
+     */
+    public synchronized String getSubject(int order){
+        return history.getSubject(order);
+    }
+
+    /**
+     * Get IRIs of all resources in the history.
+     * 
+     * @return 
+     */
+    public synchronized List<String> getSubjects(){
+        List<String> subjects = new ArrayList<>(history.size());
+        for(int i=0; i<history.size(); i++)
+            subjects.add(history.getSubject(i));
+        return subjects;
+    }
+    
+    /**
+     * Check if the current position is the last one in the history.
+     *
+     * @return
+     */
+    public synchronized boolean atEnd(){
+        return history.atEnd();
+    }
+
+    /**
+     * Move forward within the history.
+     *
+     * @return next snapshot or null if the current position is the last one
+     *         or the next snapshot has been evicted
+     */
+    public synchronized ResourceSnapshot forward(){
+        if(history.atEnd()) return null;
+        return history.forward();
+    }
+
+    /**
+     * Append a newly retrieved snapshot to the history and move to it.
+     *
+     * @param m
+     * @return
+     */
+    public ResourceSnapshot append(ResourceSnapshot m){
+        synchronized(this){
+            release(history.append(m, m.getSubject()));
+            store.retain(m.size());
+        }
+        store.enforceBudget();
+        return m;
+    }
+
+    /**
+     * Move backward within the history.
+     *
+     * @return previous snapshot, the first one if already at the beginning
+     *         or null if the snapshot has been evicted
+     */
+    public synchronized ResourceSnapshot backward(){
+        return history.backward();
+    }
+
+    /**
+     * Remove the last snapshot from the history, step back from it and release
+     * the lease of its resource.
+     *
+     * @return IRI of the removed resource or null if the history is empty
+     */
+    public synchronized String removeLast(){
+        String subject = history.getSubject(history.size() - 1);
+        release(history.removeLast());
+        User u = user;
+        if(subject != null && u != null)
+            LeaseScheduler.release(subject, u.email);
+        return subject;
+    }
+
+    /**
+     * Release leases of all resources in the history held by the logged in user.
+     */
+    synchronized void releaseLeases(){
+        User u = user;
+        if(u == null) return;
+        for(int i=0; i<history.size(); i++)
+            LeaseScheduler.release(history.getSubject(i), u.email);
+    }
+
+    /**
+     * Evict the oldest snapshot kept by the session, never the current one.
+     *
+     * @return true if a snapshot has been evicted
+     */
+    synchronized boolean evictOldest(){
+        ResourceSnapshot m = history.evictOldest();
+        release(m);
+        return m != null;
+    }
+
+    /**
+     * Drop all snapshots kept by the session.
+     */
+    synchronized void clear(){
+        releaseJson();
+        while(!history.isEmpty())
+            release(history.removeLast());
+        history.clear();
+    }
+
+    /**
+     * Drop serialization of the snapshot served last and release it from the budget.
+     */
+    private void releaseJson(){
+        if(serialized != null)
+            store.retain(-serialized.size());
+        serialized = null;
+        serializedJson = null;
+    }
+
+    /**
+     * Release triples of an evicted or removed snapshot from the budget.
+     *
+     * @param m snapshot or null
+     */
+    private void release(ResourceSnapshot m){
+        if(m != null)
+            store.retain(-m.size());
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator;
+
+import com.github.fuchsdavid.annotator.logic.Prefetcher;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Registry of client sessions and user accounts safe for concurrent use.
+ *
+ * Sessions idle for longer than the configured timeout are expired together
+ * with the leases of their resources and the number of triples kept by all sessions together is bounded by evicting
+ * the oldest models of the least recently used sessions.
+ *
+ * @author David Fuchs
+ */
+public class SessionStore {
+    private static final Logger LOGGER = Logger.getLogger(SessionStore.class.getName());
+
+    private final ConcurrentMap<String,Session> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String,User> users = new ConcurrentHashMap<>();
+    private final AtomicLong retainedTriples = new AtomicLong();
+    private final AtomicBoolean evicting = new AtomicBoolean(false);
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Start periodic expiry of idle sessions.
+     */
+    public synchronized void start(){
+        if(scheduler != null) return;
+        long period = Math.max(1, Math.min(60, Main.sessionTimeout / 4));
+        scheduler = Executors.newSingleThreadScheduledExecutor(ExecutorMode.namedThreadFactory("session-expiry-", true));
+        scheduler.scheduleWithFixedDelay(this::expireIdle, period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Get session with given ID and record its use.
+     *
+     * @param id
+     * @return session or null if it does not exist
+     */
+    public Session get(String id){
+        Session session = sessions.get(id);
+        if(session != null)
+            session.touch();
+        return session;
+    }
+
+    /**
+     * Get session with given ID, creating it if it does not exist.
+     *
+     * @param id
+     * @return
+     */
+    public Session getOrCreate(String id){
+        Session session = sessions.computeIfAbsent(id, (String key) -> new Session(key, this));
+        session.touch();
+        return session;
+    }
+
+    /**
+     * Remove session with given ID and drop everything kept for it.
+     *
+     * @param id
+     * @return removed session or null if it did not exist
+     */
+    public Session remove(String id){
+        Session session = sessions.remove(id);
+        if(session != null){
+            session.releaseLeases();
+            session.clear();
+            Prefetcher.discard(id);
+        }
+        return session;
+    }
+
+    /**
+     * Remove sessions which have not been used for longer than the configured timeout.
+     */
+    void expireIdle(){
+        expireIdle(System.currentTimeMillis());
+    }
+
+    void expireIdle(long now){
+        long deadline = now - TimeUnit.SECONDS.toMillis(Main.sessionTimeout);
+        int expired = 0;
+        for(Session session : sessions.values())
+            if(session.getLastAccess() < deadline && sessions.remove(session.id, session)){
+                session.releaseLeases();
+                session.clear();
+                Prefetcher.discard(session.id);
+                expired++;
+            }
+        if(expired > 0)
+            LOGGER.log(Level.INFO, "{0}: Expired " + expired + " idle sessions.",
+                       new Timestamp(System.currentTimeMillis()));
+    }
+
+    /**
+     * Account for triples kept or released by a session.
+     *
+     * @param triples number of triples, negative if they have been released
+     */
+    void retain(long triples){
+        retainedTriples.addAndGet(triples);
+    }
+
+    /**
+     * Get number of triples kept by all sessions.
+     *
+     * @return
+     */
+    public long getRetainedTriples(){
+        return retainedTriples.get();
+    }
+
+    /**
+     * Evict oldest models of the least recently used sessions until the triples
+     * kept by all sessions fit into the configured budget.
+     *
+     * Must not be called while holding the lock of a session.
+     */
+    void enforceBudget(){
+        if(retainedTriples.get() <= Main.sessionTriples || !evicting.compareAndSet(false, true))
+            return;
+        try{
+            List<Session> lru = new ArrayList<>(sessions.values());
+            lru.sort(Comparator.comparingLong(Session::getLastAccess));
+            for(Session session : lru)
+                while(retainedTriples.get() > Main.sessionTriples && session.evictOldest());
+        }
+        finally{
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * Get user account registered under given e-mail address.
+     *
+     * @param email
+     * @return user or null if there is no such account
+     */
+    public User getUser(String email){
+        return users.get(email);
+    }
+
+    /**
+     * Register a new user account unless the e-mail address is already in use.
+     *
+     * @param user
+     * @return true if the account was registered
+     */
+    public boolean addUser(User user){
+        return users.putIfAbsent(user.email, user) == null;
+    }
+
+    /**
+     * Get all registered user accounts.
+     *
+     * @return
+     */
+    public Collection<User> getUsers(){
+        return users.values();
+    }
+}
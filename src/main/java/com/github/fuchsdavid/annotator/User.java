@@ -18,6 +18,7 @@ package com.github.fuchsdavid.annotator;
 
 import java.util.Base64;
 import java.util.Base64.Encoder;
+import java.util.TreeMap;
 import javax.json.Json;
 import javax.json.JsonObject;
 
@@ -28,10 +29,14 @@ import javax.json.JsonObject;
  */
 public class User {
     private static final Encoder B64E = Base64.getEncoder();
+    private static final int UNKNOWN = -1;
     public final String email;
     
     private final String salt;
     private final String passwordHash;
+    private int numberOfAnnotations = UNKNOWN;
+    private final TreeMap<Long,Integer> annotationsWhileUnknown = new TreeMap<>();
+    private volatile boolean loggedIn = false;
     
     /**
      * Creates instance of a new user.
@@ -57,6 +62,62 @@ public class User {
         return this.passwordHash.equals(B64E.encodeToString(Main.PWH.getHash(salt, password).getBytes()));
     }
     
+    /**
+     * Check if the user is logged in.
+     * 
+     * @return 
+     */
+    public boolean isLoggedIn(){
+        return loggedIn;
+    }
+    
+    /**
+     * Set whether the user is logged in.
+     * 
+     * @param loggedIn 
+     */
+    public void setLoggedIn(boolean loggedIn){
+        this.loggedIn = loggedIn;
+    }
+    
+    /**
+     * Get number of resources annotated by the user.
+     * 
+     * @return number of annotations or -1 if it has not been loaded yet
+     */
+    public synchronized int getNumberOfAnnotations(){
+        return numberOfAnnotations;
+    }
+    
+    /**
+     * Set number of resources annotated by the user unless it is already known.
+     * Resources annotated while the number was not known are added to it
+     * unless their update had already been written to the triplestore.
+     * 
+     * @param n number of annotations in the triplestore
+     * @param written number of updates written when the annotations were counted
+     */
+    public synchronized void setNumberOfAnnotations(int n, long written){
+        if(numberOfAnnotations != UNKNOWN) return;
+        numberOfAnnotations = n;
+        for(int pending : annotationsWhileUnknown.tailMap(written).values())
+            numberOfAnnotations += pending;
+        annotationsWhileUnknown.clear();
+    }
+    
+    /**
+     * Account for newly annotated resources.
+     * 
+     * @param n 
+     * @param update sequence number of the update containing the annotations
+     */
+    public synchronized void addAnnotations(int n, long update){
+        if(numberOfAnnotations == UNKNOWN)
+            annotationsWhileUnknown.merge(update, n, Integer::sum);
+        else
+            numberOfAnnotations += n;
+    }
+    
     /**
      * Serialize user information to JSON.
      * 
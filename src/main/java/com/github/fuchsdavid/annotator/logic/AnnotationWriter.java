@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator.logic;
+
+import com.github.fuchsdavid.annotator.ExecutorMode;
+import com.github.fuchsdavid.annotator.Main;
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.json.Json;
+import org.apache.jena.query.QueryException;
+import org.apache.jena.update.UpdateFactory;
+import org.apache.jena.update.UpdateRequest;
+
+/**
+ * Write-behind queue of annotations. Submitted updates are appended to a journal
+ * on disk and later sent to the SPARQL endpoint in requests of at most the configured
+ * batch size, either when enough of them are pending or after a configured delay.
+ * Updates left in the journal are sent again after restart. Journal entries,
+ * which cannot be parsed or are refused by the SPARQL endpoint, are moved to
+ * a separate file of rejected updates, so that they never block the entries behind them.
+ * 
+ * @author David Fuchs
+ */
+public class AnnotationWriter {
+    private static final Logger LOGGER = Logger.getLogger(AnnotationWriter.class.getName());
+    private static final List<String> PENDING = new ArrayList<>();
+    private static final Object FLUSH_LOCK = new Object();
+    
+    private static ScheduledExecutorService scheduler;
+    private static FileOutputStream journal;
+    private static long enqueued = 0;
+    private static long dequeued = 0;
+    
+    private AnnotationWriter(){}
+    
+    /**
+     * Replay updates left in the journal and start flushing periodically.
+     * 
+     * @throws IOException 
+     */
+    public static synchronized void start() throws IOException{
+        Path file = Main.journal;
+        if(file.getParent() != null)
+            Files.createDirectories(file.getParent());
+        if(Files.exists(file)){
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while((line = reader.readLine()) != null){
+                    if(line.isBlank()) continue;
+                    try{
+                        String u = Json.createReader(new StringReader(line)).readObject().getString("update");
+                        UpdateFactory.create(u);
+                        PENDING.add(u);
+                        enqueued++;
+                    }
+                    catch(RuntimeException ex){
+                        LOGGER.log(Level.WARNING, "{0}: Rejecting damaged journal entry: " + ex.getMessage(),
+                                   new Timestamp(System.currentTimeMillis()));
+                        quarantine(List.of(line));
+                    }
+                }
+            }
+            LOGGER.log(Level.INFO, "{0}: Recovered " + PENDING.size() + " updates from journal.",
+                       new Timestamp(System.currentTimeMillis()));
+        }
+        journal = new FileOutputStream(file.toFile(), true);
+        scheduler = Executors.newSingleThreadScheduledExecutor(ExecutorMode.namedThreadFactory("annotation-writer-", true));
+        scheduler.scheduleWithFixedDelay(AnnotationWriter::flush, Main.writeDelay, Main.writeDelay, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(AnnotationWriter::flush));
+    }
+    
+    /**
+     * Append update to the journal and queue it for the SPARQL endpoint.
+     * Once this method returns, the update survives a crash of the server,
+     * but it may not have reached the SPARQL endpoint yet.
+     * 
+     * @param update
+     * @return sequence number of the update, updates are written in the order
+     *         of their sequence numbers, or -1 if it has already been written
+     * @throws IOException if the update could not be written to the journal
+     */
+    public static long submit(UpdateRequest update) throws IOException{
+        if(journal == null){
+            SparqlClient.update(update);
+            return -1;
+        }
+        String u = update.toString();
+        int pending;
+        long sequence;
+        synchronized(AnnotationWriter.class){
+            journal.write((Json.createObjectBuilder().add("update", u).build().toString() + "\n")
+                              .getBytes(StandardCharsets.UTF_8));
+            journal.getFD().sync();
+            PENDING.add(u);
+            pending = PENDING.size();
+            sequence = enqueued++;
+        }
+        if(pending >= Main.writeBatchSize)
+            scheduler.execute(AnnotationWriter::flush);
+        return sequence;
+    }
+    
+    /**
+     * Get number of updates, which have left the queue. Updates with lower
+     * sequence numbers have been written to the SPARQL endpoint or rejected.
+     * 
+     * @return 
+     */
+    static synchronized long getDequeued(){
+        return dequeued;
+    }
+    
+    /**
+     * Run an action while no pending updates are being sent, so that
+     * the number of updates, which have left the queue, does not change.
+     * 
+     * @param <T>
+     * @param action
+     * @return result of the action
+     */
+    static <T> T whileNotFlushing(Supplier<T> action){
+        synchronized(FLUSH_LOCK){
+            return action.get();
+        }
+    }
+    
+    /**
+     * Send pending updates to the SPARQL endpoint in batches of at most
+     * the configured size and remove them from the journal.
+     */
+    private static void flush(){
+        synchronized(FLUSH_LOCK){
+            while(true){
+                List<String> batch;
+                synchronized(AnnotationWriter.class){
+                    if(PENDING.isEmpty()) return;
+                    batch = new ArrayList<>(PENDING.subList(0, Math.min(PENDING.size(), Main.writeBatchSize)));
+                }
+                if(!flush(batch)) return;
+            }
+        }
+    }
+    
+    /**
+     * Send a batch of updates, which are the oldest pending ones.
+     * 
+     * @param batch 
+     * @return false if the SPARQL endpoint is not available and the batch stays pending
+     */
+    private static boolean flush(List<String> batch){
+        List<String> rejected = new ArrayList<>();
+        List<String> parsed = new ArrayList<>(batch.size());
+        for(String u : batch){
+            try{
+                UpdateFactory.create(u);
+                parsed.add(u);
+            }
+            catch(QueryException ex){
+                LOGGER.log(Level.WARNING, "{0}: Rejecting unparseable pending update: " + ex.getMessage(),
+                           new Timestamp(System.currentTimeMillis()));
+                rejected.add(Json.createObjectBuilder().add("update", u).build().toString());
+            }
+        }
+        try{
+            if(!parsed.isEmpty())
+                send(parsed, rejected);
+        }
+        catch(Exception ex){
+            LOGGER.log(Level.SEVERE, "{0}: Failed to write " + batch.size() + " pending updates: " + ex.getMessage(),
+                       new Timestamp(System.currentTimeMillis()));
+            return false;
+        }
+        synchronized(AnnotationWriter.class){
+            PENDING.subList(0, batch.size()).clear();
+            dequeued += batch.size();
+            if(!rejected.isEmpty())
+                quarantine(rejected);
+            try{
+                rewriteJournal();
+            }
+            catch(IOException ex){
+                LOGGER.log(Level.SEVERE, "{0}: Failed to rewrite journal: " + ex.getMessage(),
+                           new Timestamp(System.currentTimeMillis()));
+            }
+        }
+        LOGGER.log(Level.INFO, "{0}: Successfully entered " + (batch.size() - rejected.size())
+                               + " updates into the triplestore.",
+                   new Timestamp(System.currentTimeMillis()));
+        return true;
+    }
+    
+    /**
+     * Send updates in a single request. If the SPARQL endpoint refuses them,
+     * the updates are split in halves until the refused ones are found.
+     * Halves sent before a transient failure are sent again later, which
+     * does no harm, since inserting the same data twice has no effect.
+     * 
+     * @param updates parseable updates
+     * @param rejected journal entries of refused updates
+     * @throws RuntimeException if the SPARQL endpoint is not available
+     */
+    private static void send(List<String> updates, List<String> rejected){
+        UpdateRequest request = new UpdateRequest();
+        updates.forEach((String u) -> UpdateFactory.parse(request, u));
+        try{
+            SparqlClient.update(request);
+        }
+        catch(RuntimeException ex){
+            if(ex instanceof ServiceUnavailableException || SparqlClient.isTransient(ex))
+                throw ex;
+            if(updates.size() == 1){
+                LOGGER.log(Level.WARNING, "{0}: Rejecting update refused by the SPARQL endpoint: " + ex.getMessage(),
+                           new Timestamp(System.currentTimeMillis()));
+                rejected.add(Json.createObjectBuilder().add("update", updates.get(0)).build().toString());
+                return;
+            }
+            int half = updates.size() / 2;
+            send(updates.subList(0, half), rejected);
+            send(updates.subList(half, updates.size()), rejected);
+        }
+    }
+    
+    /**
+     * Replace journal by one containing only the pending updates.
+     * 
+     * @throws IOException 
+     */
+    private static void rewriteJournal() throws IOException{
+        Path tmp = Files.createTempFile(Main.journal.toAbsolutePath().getParent(), null, ".tmp");
+        try (FileOutputStream os = new FileOutputStream(tmp.toFile())) {
+            for(String u : PENDING)
+                os.write((Json.createObjectBuilder().add("update", u).build().toString() + "\n")
+                             .getBytes(StandardCharsets.UTF_8));
+            os.getFD().sync();
+        }
+        // The journal is reopened even if the move fails, so that later submissions keep working.
+        try{
+            journal.close();
+            Files.move(tmp, Main.journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally{
+            journal = new FileOutputStream(Main.journal.toFile(), true);
+            Files.deleteIfExists(tmp);
+        }
+    }
+    
+    /**
+     * Append journal entries, which cannot be sent to the SPARQL endpoint,
+     * to the file of rejected updates next to the journal.
+     * 
+     * @param lines 
+     */
+    private static void quarantine(List<String> lines){
+        Path file = Main.journal.resolveSibling(Main.journal.getFileName() + ".rejected");
+        try (FileOutputStream os = new FileOutputStream(file.toFile(), true)) {
+            for(String line : lines)
+                os.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        catch(IOException ex){
+            LOGGER.log(Level.SEVERE, "{0}: Failed to keep " + lines.size() + " rejected updates: " + ex.getMessage(),
+                       new Timestamp(System.currentTimeMillis()));
+        }
+    }
+}
@@ -16,52 +16,42 @@
  */
 package com.github.fuchsdavid.annotator.logic;
 
-import com.github.fuchsdavid.annotator.Main;
 import static com.github.fuchsdavid.annotator.Main.*;
-import com.github.fuchsdavid.annotator.Position;
+import com.github.fuchsdavid.annotator.Session;
 import com.github.fuchsdavid.annotator.User;
 import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.InetSocketAddress;
-import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.json.Json;
 import javax.json.JsonArray;
-import javax.json.JsonArrayBuilder;
 import javax.json.JsonException;
-import javax.json.JsonObjectBuilder;
 import javax.json.JsonReader;
 import javax.json.JsonStructure;
 import javax.json.JsonValue;
 import javax.json.JsonValue.ValueType;
+import javax.json.stream.JsonGenerator;
 import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathFactory;
-import org.apache.jena.query.ParameterizedSparqlString;
-import org.apache.jena.rdf.model.Model;
-import org.apache.jena.rdf.model.Statement;
-import org.apache.jena.update.UpdateExecutionFactory;
 import org.apache.jena.update.UpdateRequest;
-import org.w3c.dom.DOMException;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
 
 /**
  * This class wraps the functionality provided by a library implementation
@@ -71,6 +61,16 @@ import org.w3c.dom.Node;
  */
 public class Annotator {
     private static final Logger LOGGER = Logger.getLogger(Annotator.class.getName());
+    private static final int CAPTION = 0;
+    private static final int TABLE = 1;
+    private static final int COUNTER = 2;
+    private static final int BODY_END = 3;
+    private static final byte[] CAPTION_PREFIX = "<strong>You are currently annotating resource:</strong> "
+                                                 .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ROW_START = "<tr><td>".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CELL_SEPARATOR = "</td><td>".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ROW_END = "</td></tr>".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NO_RECORDS = "<p>There are no records to show.</p>".getBytes(StandardCharsets.UTF_8);
     
     private Annotator(){}
     
@@ -88,6 +88,7 @@ public class Annotator {
             server.createContext("/data", Annotator::handleDataRequest);
             server.createContext("/auth", Annotator::handleAuthentication);
             server.createContext("/s/", Annotator::doGetStaticFiles);
+            server.setExecutor(executorMode.createExecutor(threads, queueSize));
             server.start();
         }
         catch (IOException ex) {
@@ -112,37 +113,34 @@ public class Annotator {
      */
     private static void doGetStaticFiles(HttpExchange exchange)
             throws IOException {
-        if(exchange.getRequestMethod().equals("GET")){
+        if(exchange.getRequestMethod().equals("GET") || exchange.getRequestMethod().equals("HEAD")){
             String path = "/www" + (exchange.getRequestURI().getPath().contains(".") ?
                                     exchange.getRequestURI().getPath()               :
                                     exchange.getRequestURI().getPath() + ".xhtml");
-            String[] ext = path.split("\\.");
-            switch(ext[ext.length-1]){
-                case "css":  exchange.getResponseHeaders().add("content-type",
-                                                               "text/css");
-                             break;
-                case "js":   exchange.getResponseHeaders().add("content-type",
-                                                               "text/javascript+module");
-                             break;
-                case "xhtml":exchange.getResponseHeaders().add("content-type",
-                                                               "application/xhtml+xml");
-                             break;
-                case "gif":  exchange.getResponseHeaders().add("content-type",
-                                                               "image/gif");
-                             break;
-                default:     exchange.sendResponseHeaders(406, 0);
-                             exchange.getResponseBody().close();
-                             return;
+            if(path.contains("..")){
+                exchange.sendResponseHeaders(403, -1);
+                exchange.close();
+                return;
+            }
+            if(StaticAssets.contentType(path) == null){
+                exchange.sendResponseHeaders(406, -1);
+                exchange.close();
+                return;
             }
-            try (InputStream is = Main.class.getResourceAsStream(path)) {
-                exchange.sendResponseHeaders(200, is.available());
-                is.transferTo(exchange.getResponseBody());
+            if(WebRoot.send(exchange, path))
+                return;
+            StaticResource resource = StaticAssets.get(path);
+            if(resource == null){
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
             }
+            resource.send(exchange);
         }
         else{
-            exchange.sendResponseHeaders(405, 0);
+            exchange.sendResponseHeaders(405, -1);
+            exchange.close();
         }
-        exchange.getResponseBody().close();
     }
     
     /**
@@ -157,7 +155,12 @@ public class Annotator {
         if(session_id.equals("")) session_id = createSession(exchange);
         // Dispatch allowed request methods.
         switch(exchange.getRequestMethod()){
-            case "GET": doGet(exchange,session_id);
+            case "GET": try{
+                            doGet(exchange,session_id);
+                        }
+                        catch(ServiceUnavailableException ex){
+                            sendServiceUnavailable(exchange, ex);
+                        }
                         break;
             default:    exchange.sendResponseHeaders(405, 0);
                         exchange.getResponseBody().close();
@@ -173,13 +176,13 @@ public class Annotator {
      */
     private static void doGet(HttpExchange exchange, String session_id)
             throws IOException{
-        String path = "/";
         if(exchange.getRequestURI().getPath().contains("..")){
             exchange.sendResponseHeaders(403, 0);
             exchange.getResponseBody().close();
             return;
         }
-        if(!ID2USER.containsKey(session_id)){
+        Session session = SESSIONS.get(session_id);
+        if(session == null || session.getUser() == null){
             LOGGER.log(Level.INFO, "{0}: Unauthorized access, redirecting to /auth",
                        new Timestamp(System.currentTimeMillis()));
             exchange.getResponseHeaders().add("Location", "/auth");
@@ -187,63 +190,30 @@ public class Annotator {
             exchange.getResponseBody().close();
             return;
         }
-        if(exchange.getRequestURI().getPath().endsWith("/"))
-            path += "www" + exchange.getRequestURI().getPath() + "index.xhtml";
-        else
-            path += "www" + exchange.getRequestURI().getPath() + ".xhtml";
         if(exchange.getRequestURI().getPath().equals("/")){
-            if(!ID2MODEL_LIST.containsKey(session_id)){
-                Model m = RDFUtilitites.retrieveTriples(exchange,session_id);
-                Collection<Model> rdfCollection = new ArrayList<>();
-                rdfCollection.add(m);
-                ID2MODEL_LIST.put(session_id,rdfCollection);
-                ID2POSITION.put(session_id, new Position(0));
+            if(!session.hasHistory()){
+                ResourceSnapshot m = takePrefetchedSnapshot(exchange, session);
+                if(m == null) return;
+                session.resetHistory(m);
             }
-            try{
-                final Integer[] numberOfAnnotations = new Integer[1];
-                Thread thread = new Thread(() -> {
-                    numberOfAnnotations[0] = RDFUtilitites.getNumberOfAnnotations(exchange, session_id,
-                                                                             Main.ID2USER.get(session_id).email);
+            CompletableFuture<Integer> numberOfAnnotations
+                    = RDFUtilitites.getNumberOfAnnotationsAsync(session.getUser());
+            ResourceSnapshot m = snapshotAt(session, session.getPosition());
+            String counter = Integer.toString(awaitNumberOfAnnotations(numberOfAnnotations));
+            exchange.sendResponseHeaders(200, 0);
+            try(OutputStream os = new BufferedOutputStream(exchange.getResponseBody())){
+                INDEX_TEMPLATE.render(os, (int slot, OutputStream out) -> {
+                    switch(slot){
+                        case CAPTION:  if(m != null) writeCaption(m, out);
+                                       break;
+                        case TABLE:    if(m != null) writeTable(m, out);
+                                       break;
+                        case COUNTER:  out.write(counter.getBytes(StandardCharsets.UTF_8));
+                                       break;
+                        case BODY_END: if(m == null) out.write(NO_RECORDS);
+                                       break;
+                    }
                 });
-                thread.start();
-                Document document = DOCUMENT_BUILDER.newDocument();
-                Node root = CACHED_FILES.get(path).getDocumentElement().cloneNode(true);
-                String license = "";
-                if(CACHED_FILES.get(path).getFirstChild().getNodeType() == Node.COMMENT_NODE){
-                    license = CACHED_FILES.get(path).getFirstChild().getNodeValue();
-                }
-                document.adoptNode(root);
-                document.appendChild(root);
-                document.insertBefore(document.createComment(license), root);
-                if(ID2MODEL_LIST.get(session_id).size() > ID2POSITION.get(session_id).getPosition()){
-                    fillTable(session_id, document);
-                }
-                else{
-                    Node p = document.createElement("p");
-                    document.getElementsByTagName("body").item(0).appendChild(p);
-                    p.setTextContent("There are no records to show.");
-                }
-                thread.join();
-                document.getElementsByTagName("span").item(0).setTextContent(numberOfAnnotations[0].toString());
-                Transformer t = TF.newTransformer();
-                try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
-                    t.transform(new DOMSource(document), new StreamResult(os));
-                    exchange.sendResponseHeaders(200, os.size());
-                    exchange.getResponseBody().write(os.toByteArray());
-                }
-                exchange.getResponseBody().close();
-            }
-            catch(TransformerConfigurationException ex){
-                LOGGER.log(Level.SEVERE, "{0}: " + ex.getMessage(),
-                           new Timestamp(System.currentTimeMillis()));
-                System.exit(1);
-            }
-            catch(TransformerException | DOMException ex){
-                LOGGER.log(Level.SEVERE, "{0}: " + ex.getMessage(),
-                           new Timestamp(System.currentTimeMillis()));
-                System.exit(1);
-            } catch (InterruptedException ex) {
-                Logger.getLogger(Annotator.class.getName()).log(Level.SEVERE, null, ex);
             }
         }
         else{
@@ -253,44 +223,32 @@ public class Annotator {
     }
 
     /**
-     * Fill table with triples in a model.
+     * Write caption of the table naming the resource.
      * 
-     * @param session_id
-     * @param document
-     * @throws DOMException 
+     * @param m
+     * @param out
+     * @throws IOException 
      */
-    private static void fillTable(String session_id, Document document) throws DOMException {
-        final Node tbody = document.getElementsByTagName("tbody").item(0);
-        final Node caption = document.getElementsByTagName("caption").item(0);
-        final Model m = (Model)(ID2MODEL_LIST.get(session_id).toArray()[ID2POSITION.get(session_id).getPosition()]);
-        final Node c = document.createElement("strong");
-        c.appendChild(document.createTextNode("You are currently annotating resource:"));
-        caption.appendChild(c);
-        caption.appendChild(document.createTextNode(" " + RDFUtilitites.getPrefixedName(m.listSubjects().next())));
-        sortStatementsByPredicates(m).forEach(statement -> {
-            Node tr = tbody.appendChild(document.createElement("tr"));
-            Node p = tr.appendChild(document.createElement("td"));
-            p.setTextContent(RDFUtilitites.getPrefixedName(statement.getPredicate()));
-            Node o = tr.appendChild(document.createElement("td"));
-            if(statement.getObject().isResource())
-                o.setTextContent(RDFUtilitites.getPrefixedName(statement.getObject().asResource()));
-            else
-                o.setTextContent(statement.getObject().asLiteral().getLexicalForm());
-        });
+    private static void writeCaption(ResourceSnapshot m, OutputStream out) throws IOException {
+        out.write(CAPTION_PREFIX);
+        PageTemplate.writeEscaped(out, m.getPrefixedSubject());
     }
     
     /**
-     * Return statements sorted by predicate lexicographically.
+     * Write rows of the table with triples of a resource.
      * 
-     * @param m Model containing the statements
-     * @return 
+     * @param m
+     * @param out
+     * @throws IOException 
      */
-    private static List<Statement> sortStatementsByPredicates(Model m){
-        List<Statement> statements = m.listStatements().toList();
-        statements.sort((Statement o1, Statement o2) -> {
-            return o1.getPredicate().asResource().getURI().compareTo(o2.getPredicate().asResource().getURI());
-        });
-        return statements;
+    private static void writeTable(ResourceSnapshot m, OutputStream out) throws IOException {
+        for(int i = 0; i < m.size(); i++){
+            out.write(ROW_START);
+            PageTemplate.writeEscaped(out, m.getPredicate(i));
+            out.write(CELL_SEPARATOR);
+            PageTemplate.writeEscaped(out, m.getObject(i));
+            out.write(ROW_END);
+        }
     }
     
     /**
@@ -301,19 +259,23 @@ public class Annotator {
     private static void handleDataRequest(HttpExchange exchange){
         String session_id = retrieveSessionID(exchange);
         try{
-            if(session_id.equals("") || !EMAIL2STATE.get(ID2USER.get(session_id).email)){
+            Session session = SESSIONS.get(session_id);
+            if(session == null || !session.isLoggedIn()){
                 exchange.sendResponseHeaders(401, 0);
                 exchange.getResponseBody().close();
                 return;
             }
             switch(exchange.getRequestMethod()){
-                case "GET":   doGetData(exchange, session_id);     break;
-                case "DELETE":doDeleteData(exchange, session_id);  break;
-                case "POST":  doPostData(exchange,session_id);     break;
+                case "GET":   doGetData(exchange, session);     break;
+                case "DELETE":doDeleteData(exchange, session);  break;
+                case "POST":  doPostData(exchange, session);    break;
                 default:      exchange.sendResponseHeaders(405, 0);
                               exchange.getResponseBody().close();
             }
         }
+        catch (ServiceUnavailableException ex) {
+            sendServiceUnavailable(exchange, ex);
+        }
         catch (IOException ex) {
             LOGGER.log(Level.SEVERE, "{0}: " + ex.getMessage(), new Timestamp(System.currentTimeMillis()));
         }
@@ -323,45 +285,37 @@ public class Annotator {
      * Handles GET requests.
      * 
      * @param exchange
-     * @param session_id 
+     * @param session 
      */
-    private static void doGetData(HttpExchange exchange, String session_id)
+    private static void doGetData(HttpExchange exchange, Session session)
             throws IOException{
-        Collection<Model> rdfCollection = ID2MODEL_LIST.get(session_id);
         Map<String,String> params = retrieveQueryParameters(exchange);
-        Model m = null;
-        final Integer[] numberOfAnnotations = new Integer[1];
-        Thread thread = new Thread(() -> {
-            numberOfAnnotations[0] = RDFUtilitites.getNumberOfAnnotations(exchange, session_id,
-                                                                     Main.ID2USER.get(session_id).email);
-        });
-        thread.start();
+        ResourceSnapshot m = null;
+        CompletableFuture<Integer> numberOfAnnotations
+                = RDFUtilitites.getNumberOfAnnotationsAsync(session.getUser());
         switch(params.get("direction")){
             case "forward":
-                if(ID2POSITION.get(session_id).getPosition() >= ID2MODEL_LIST.get(session_id).size() - 1){
+                if(session.atEnd()){
                     LOGGER.log(Level.INFO, "{0}: Requesting more data from SPARQL endpoint.",
                                new Timestamp(System.currentTimeMillis()));
-                    m = RDFUtilitites.retrieveTriples(exchange,session_id);
-                    ID2POSITION.get(session_id).preincrement();
-                    rdfCollection.add(m);
+                    m = takePrefetchedSnapshot(exchange, session);
+                    if(m == null) return;
+                    session.append(m);
                 }
                 else{
                     LOGGER.log(Level.INFO, "{0}: Retrieving cached data.",
                                new Timestamp(System.currentTimeMillis()));
-                    m = (Model)(rdfCollection.toArray()[ID2POSITION.get(session_id).preincrement()]);
+                    m = session.forward();
+                    if(m == null) m = snapshotAt(session, session.getPosition());
                 }
                 break;
             case "backward":
                 LOGGER.log(Level.INFO, "{0}: Retrieving cached data.",
                            new Timestamp(System.currentTimeMillis()));
-                m = (Model)(rdfCollection.toArray()[ID2POSITION.get(session_id).predecrement()]);
+                m = session.backward();
+                if(m == null) m = snapshotAt(session, session.getPosition());
                 break;
         }
-        try {
-            thread.join();
-        } catch (InterruptedException ex) {
-            Logger.getLogger(Annotator.class.getName()).log(Level.SEVERE, null, ex);
-        }
         if(m == null){
             LOGGER.log(Level.WARNING, "{0}: No data found.",
                        new Timestamp(System.currentTimeMillis()));
@@ -369,23 +323,13 @@ public class Annotator {
             exchange.getResponseBody().close();
             return;
         }
-        String json;
+        if(m.size() > streamThreshold){
+            streamData(exchange, m, awaitNumberOfAnnotations(numberOfAnnotations));
+            return;
+        }
+        byte[] triples;
         try{
-            JsonObjectBuilder object = JF.createObjectBuilder();
-            JsonArrayBuilder array = JF.createArrayBuilder();
-            sortStatementsByPredicates(m).forEach(statement -> {
-                JsonObjectBuilder createTriple = JF.createObjectBuilder()
-                    .add("subject", RDFUtilitites.getPrefixedName(statement.getSubject()));
-                createTriple.add("predicate", RDFUtilitites.getPrefixedName(statement.getPredicate()));
-                if(statement.getObject().isResource())
-                    createTriple.add("object", RDFUtilitites.getPrefixedName(statement.getObject().asResource()));
-                else
-                    createTriple.add("object",statement.getObject().asLiteral().getLexicalForm());
-                array.add(createTriple.build());
-            });
-            object.add("numberOfAnnotations", numberOfAnnotations[0]);
-            object.add("triples", array);
-            json = object.build().toString();
+            triples = session.getTriplesJson(m);
         }
         catch(JsonException ex){
             LOGGER.log(Level.SEVERE, "{0}: " + ex.getMessage(),
@@ -394,26 +338,184 @@ public class Annotator {
             exchange.getResponseBody().close();
             return;
         }
-        exchange.sendResponseHeaders(200, json.getBytes().length);
-        exchange.getResponseBody().write(json.getBytes());
+        // Only the number of annotations differs between responses for the same resource.
+        byte[] head = ("{\"numberOfAnnotations\":" + awaitNumberOfAnnotations(numberOfAnnotations) + ",\"triples\":")
+                      .getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, head.length + triples.length + 1);
+        exchange.getResponseBody().write(head);
+        exchange.getResponseBody().write(triples);
+        exchange.getResponseBody().write('}');
         exchange.getResponseBody().close();
         LOGGER.log(Level.INFO, "{0}: Responded to request for data.",
                    new Timestamp(System.currentTimeMillis()));
     }
     
     /**
-     * Handles DELETE requests.
+     * Writes data of a large resource with chunked transfer encoding, so that
+     * the response is never held in memory as a whole.
+     * 
+     * @param exchange
+     * @param m
+     * @param numberOfAnnotations
+     * @throws IOException 
+     */
+    private static void streamData(HttpExchange exchange, ResourceSnapshot m, int numberOfAnnotations)
+            throws IOException{
+        exchange.sendResponseHeaders(200, 0);
+        try(JsonGenerator generator = JG.createGenerator(exchange.getResponseBody(), StandardCharsets.UTF_8)){
+            generator.writeStartObject()
+                     .write("numberOfAnnotations", numberOfAnnotations)
+                     .writeStartArray("triples");
+            m.writeTriples(generator);
+            generator.writeEnd().writeEnd();
+        }
+        catch(JsonException ex){
+            LOGGER.log(Level.SEVERE, "{0}: " + ex.getMessage(),
+                       new Timestamp(System.currentTimeMillis()));
+            exchange.getResponseBody().close();
+            return;
+        }
+        LOGGER.log(Level.INFO, "{0}: Streamed " + m.size() + " triples in response to request for data.",
+                   new Timestamp(System.currentTimeMillis()));
+    }
+    
+    /**
+     * Waits for the number of annotations of a user. The number is only shown
+     * to the user, so the response is never failed because of it, not even
+     * when the SPARQL endpoint is unavailable.
+     * 
+     * @param numberOfAnnotations
+     * @return number of annotations or -1 if it could not be loaded
+     */
+    static int awaitNumberOfAnnotations(CompletableFuture<Integer> numberOfAnnotations){
+        try{
+            Integer n = numberOfAnnotations.join();
+            return (n == null ? -1 : n);
+        }
+        catch(CompletionException | CancellationException ex){
+            Throwable cause = (ex.getCause() == null ? ex : ex.getCause());
+            LOGGER.log(Level.WARNING, "{0}: Number of annotations is not available: " + cause.getMessage(),
+                       new Timestamp(System.currentTimeMillis()));
+            return -1;
+        }
+    }
+    
+    /**
+     * Gets snapshot with given order in the history of a session, retrieving it
+     * again if it has already been evicted from the session.
+     * 
+     * @param session
+     * @param order
+     * @return snapshot or null if there is no such resource
+     */
+    private static ResourceSnapshot snapshotAt(Session session, int order){
+        ResourceSnapshot m = session.get(order);
+        String subject;
+        if(m != null || (subject = session.getSubject(order)) == null)
+            return m;
+        LOGGER.log(Level.INFO, "{0}: Retrieving evicted data.",
+                   new Timestamp(System.currentTimeMillis()));
+        return TripleCache.retrieve(Collections.singletonList(subject)).stream()
+                          .findFirst().map(ResourceSnapshot::of).orElse(null);
+    }
+    
+    /**
+     * Takes next snapshot prepared for the session, responds with an error if it cannot be retrieved.
+     * 
+     * @param exchange
+     * @param session
+     * @return snapshot or null if the retrieval failed
+     * @throws IOException 
+     */
+    private static ResourceSnapshot takePrefetchedSnapshot(HttpExchange exchange, Session session)
+            throws IOException{
+        try{
+            return Prefetcher.take(session.id, session.getUser().email);
+        }
+        catch(ServiceUnavailableException ex){
+            sendServiceUnavailable(exchange, ex);
+            return null;
+        }
+        catch(RuntimeException ex){
+            LOGGER.log(Level.SEVERE, "{0}: " + ex.getMessage(),
+                       new Timestamp(System.currentTimeMillis()));
+        }
+        catch(InterruptedException ex){
+            LOGGER.log(Level.SEVERE, "{0}: " + ex.getMessage(),
+                       new Timestamp(System.currentTimeMillis()));
+            Thread.currentThread().interrupt();
+        }
+        exchange.sendResponseHeaders(500, 0);
+        exchange.getResponseBody().close();
+        return null;
+    }
+    
+    /**
+     * Starts a new history of a session after its annotations have been submitted.
+     * The client has already been answered, so a failed retrieval only leaves
+     * the history empty and the next request for content retrieves it again.
+     * Leases of resources left without annotation are released once they are
+     * no longer part of the history.
+     * 
+     * @param session
+     * @param user
+     * @param skippedResources IRIs of resources in the old history, which have not been annotated
+     */
+    private static void startNewHistory(Session session, User user, List<String> skippedResources){
+        try{
+            session.resetHistory(Prefetcher.take(session.id, user.email));
+        }
+        catch(InterruptedException ex){
+            LOGGER.log(Level.SEVERE, "{0}: " + ex.getMessage(),
+                       new Timestamp(System.currentTimeMillis()));
+            session.clearHistory();
+            Thread.currentThread().interrupt();
+        }
+        catch(RuntimeException ex){
+            LOGGER.log(Level.WARNING, "{0}: Failed to start new history: " + ex.getMessage(),
+                       new Timestamp(System.currentTimeMillis()));
+            session.clearHistory();
+        }
+        finally{
+            skippedResources.forEach((String iri) -> LeaseScheduler.release(iri, user.email));
+        }
+    }
+    
+    /**
+     * Rejects request because the SPARQL endpoint is unavailable, telling the
+     * client when to try again.
+     * 
+     * @param exchange
+     * @param ex
+     */
+    private static void sendServiceUnavailable(HttpExchange exchange, ServiceUnavailableException ex){
+        LOGGER.log(Level.WARNING, "{0}: " + ex.getMessage(),
+                   new Timestamp(System.currentTimeMillis()));
+        try{
+            exchange.getResponseHeaders().set("Retry-After", Long.toString(Math.max(1, (ex.getRetryAfter() + 999) / 1000)));
+            exchange.sendResponseHeaders(503, -1);
+        }
+        catch(IOException e){
+            LOGGER.log(Level.SEVERE, "{0}: " + e.getMessage(), new Timestamp(System.currentTimeMillis()));
+        }
+        exchange.close();
+    }
+    
+    /**
+     * Handles DELETE requests. The client deletes a resource it has found
+     * to have no triples, so the resource is never handed out again.
      * 
      * @param exchange
      * @throws IOException 
      */
-    private static void doDeleteData(HttpExchange exchange, String session_id)
+    private static void doDeleteData(HttpExchange exchange, Session session)
             throws IOException{
         Map<String,String> params = retrieveQueryParameters(exchange);
         if(params.containsKey("numberOfTriples") && Integer.parseInt(params.get("numberOfTriples")) == 0){
-            ID2MODEL_LIST.get(session_id).remove((Model)ID2MODEL_LIST.get(session_id)
-                                                                     .toArray()[ID2MODEL_LIST.get(session_id).size()-1]);
-            ID2POSITION.get(session_id).postdecrement();
+            String subject = session.removeLast();
+            if(subject != null && CandidateFilter.reject(subject))
+                LOGGER.log(Level.INFO, "{0}: Rejected resource without triples: " + subject,
+                           new Timestamp(System.currentTimeMillis()));
             exchange.sendResponseHeaders(202, 0);
             exchange.getResponseBody().close();
         }
@@ -429,7 +531,7 @@ public class Annotator {
      * @param exchange
      * @throws IOException 
      */
-    private static void doPostData(HttpExchange exchange, String session_id)
+    private static void doPostData(HttpExchange exchange, Session session)
             throws IOException{
         JsonReader input = Json.createReader(exchange.getRequestBody());
         JsonStructure topLevelObject = input.read();
@@ -437,53 +539,45 @@ public class Annotator {
             JsonArray annotations = topLevelObject.getValue("/annotations").asJsonArray();
             int numberOfAnnotatedModels=Integer.parseInt(topLevelObject.getValue("/numberOfAnnotations")
                                                                        .toString().replace("\"", ""));
-            StringBuilder sb = new StringBuilder();
-            sb.append("BASE <http://github.com/Fuchs-David/Annotator/tree/master/src/ontology/>\n");
-            sb.append("INSERT DATA {\n");
-            for(int i=0 ;i<numberOfAnnotatedModels; i++){
-                if(annotations.get(i).getValueType().equals(ValueType.NULL)) continue;
-                sb.append("?subject").append(i).append(" a ?concept").append(i).append(" .\n")
-                  .append("?subject").append(i).append(" <annotatedBy>").append(" ?mbox").append(" .\n");
-            }
-            sb.append("}");
-            ParameterizedSparqlString pss = new ParameterizedSparqlString(sb.toString());
-            pss.setIri("mbox","mailto:" + ID2USER.get(session_id).email);
+            Map<String,String> subject2concept = new LinkedHashMap<>();
             for(int i=0 ;i<numberOfAnnotatedModels; i++){
                 JsonValue annotation = annotations.get(i);
                 if(annotation.getValueType().equals(ValueType.NULL)) continue;
                 int p = Integer.parseInt(annotation.asJsonObject().getValue("/order").toString().replace("\"", ""));
-                pss.setIri("subject"+i,
-                           ((Model)(ID2MODEL_LIST.get(session_id).toArray()[p])).listSubjects().next().getURI());
+                String subject = session.getSubject(p);
+                if(subject == null) throw new Exception("Annotation refers to unknown resource.");
                 switch(annotation.asJsonObject().getValue("/type").toString().replace("\"", "")){
-                    case "Work":         pss.setIri("concept" + i,
-                                                    new URL("http://vocab.org/frbr/core.html#term-Work"));
+                    case "Work":         subject2concept.put(subject, "http://vocab.org/frbr/core.html#term-Work");
                                          break;
-                    case "Item":         pss.setIri("concept" + i,
-                                                    new URL("http://vocab.org/frbr/core.html#term-Item"));
+                    case "Item":         subject2concept.put(subject, "http://vocab.org/frbr/core.html#term-Item");
                                          break;
-                    case "Manifestation":pss.setIri("concept" + i,
-                                                    new URL("http://vocab.org/frbr/core.html#term-Manifestation"));
+                    case "Manifestation":subject2concept.put(subject, "http://vocab.org/frbr/core.html#term-Manifestation");
                                          break;
-                    case "Expression":   pss.setIri("concept" + i,
-                                                    new URL("http://vocab.org/frbr/core.html#term-Expression"));
+                    case "Expression":   subject2concept.put(subject, "http://vocab.org/frbr/core.html#term-Expression");
                                          break;
                     default:             throw new Exception("Illegal concept suggested by the client.");
                 }
             }
-            UpdateRequest update = pss.asUpdate();
-            UpdateExecutionFactory.createRemote(update, SPARQLendpoint).execute();
-            ID2MODEL_LIST.remove(session_id);
-            ID2MODEL_LIST.keySet().remove(session_id);
-            ID2POSITION.remove(session_id);
-            ID2POSITION.keySet().remove(session_id);
+            List<String> annotatedResources = new ArrayList<>(subject2concept.keySet());
+            User user = session.getUser();
+            UpdateRequest update = RDFUtilitites.createAnnotationUpdate(user.email, subject2concept);
+            long sequence = AnnotationWriter.submit(update);
+            // Counters and sampling run ahead of the SPARQL endpoint: the update is only journaled
+            // at this point and reaches the triplestore with the next flush of the write-behind queue.
+            CandidateCountCache.decrement(annotatedResources.size());
+            List<String> skippedResources = new ArrayList<>();
+            for(String subject : session.getSubjects()){
+                if(!subject2concept.containsKey(subject))
+                    skippedResources.add(subject);
+                else if(LeaseScheduler.complete(subject, user.email))
+                    BatchSampler.markAnnotated(subject);
+            }
+            user.addAnnotations(annotatedResources.size(), sequence);
             exchange.sendResponseHeaders(201, 0);
             exchange.getResponseBody().close();
-            LOGGER.log(Level.INFO, "{0}: Successfully entered data into the triplestore.",
+            LOGGER.log(Level.INFO, "{0}: Successfully queued data for the triplestore.",
                        new Timestamp(System.currentTimeMillis()));
-            ArrayList<Model> rdfCollection = new ArrayList<>();
-            rdfCollection.add(RDFUtilitites.retrieveTriples(exchange, session_id));
-            ID2MODEL_LIST.put(session_id, rdfCollection);
-            ID2POSITION.put(session_id, new Position(0));
+            startNewHistory(session, user, skippedResources);
         }
         catch(JsonException ex){
             LOGGER.log(Level.SEVERE, "{0}: " + ex.getMessage(),
@@ -495,6 +589,15 @@ public class Annotator {
             LOGGER.log(Level.SEVERE, "{0}: " + ex.getMessage(),
                        new Timestamp(System.currentTimeMillis()));
         }
+        catch(ServiceUnavailableException ex){
+            sendServiceUnavailable(exchange, ex);
+        }
+        catch(IOException ex){
+            LOGGER.log(Level.SEVERE, "{0}: " + ex.getMessage(),
+                       new Timestamp(System.currentTimeMillis()));
+            exchange.sendResponseHeaders(500, 0);
+            exchange.getResponseBody().close();
+        }
         catch (Exception ex) {
             LOGGER.log(Level.SEVERE, "{0}: " + ex.getMessage(),
                        new Timestamp(System.currentTimeMillis()));
@@ -516,14 +619,7 @@ public class Annotator {
         // Dispatch allowed request methods.
         try{
             switch(exchange.getRequestMethod()){
-                case "GET": Transformer t = TF.newTransformer();
-                            DOMSource document = new DOMSource(CACHED_FILES.get(AUTH));
-                            ByteArrayOutputStream os = new ByteArrayOutputStream();
-                            t.transform(document, new StreamResult(os));
-                            exchange.sendResponseHeaders(200, os.size());
-                            exchange.getResponseBody().write(os.toByteArray());
-                            os.close();
-                            exchange.getResponseBody().close();
+                case "GET": AUTH_PAGE.send(exchange);
                             break;
                 case "POST":JsonReader input = Json.createReader(exchange.getRequestBody());
                             JsonStructure root = input.read();
@@ -537,13 +633,7 @@ public class Annotator {
                             exchange.getResponseBody().close();
             }
         }
-        catch(TransformerConfigurationException ex){
-            LOGGER.log(Level.SEVERE, "{0}: " + ex.getMessage(),
-                       new Timestamp(System.currentTimeMillis()));
-            exchange.sendResponseHeaders(400, 0);
-            exchange.getResponseBody().close();
-        }
-        catch(TransformerException | JsonException ex){
+        catch(JsonException ex){
             LOGGER.log(Level.SEVERE, "{0}: " + ex.getMessage(),
                        new Timestamp(System.currentTimeMillis()));
             exchange.sendResponseHeaders(400, 0);
@@ -579,7 +669,7 @@ public class Annotator {
             exchange.getResponseBody().close();
             return false;
         }
-        else if(EMAIL2USER.containsKey(email)){
+        else if(SESSIONS.getUser(email) != null){
             LOGGER.log(Level.INFO, "E-mail " + email + " is already in use.",
                        new Timestamp(System.currentTimeMillis()));
             exchange.sendResponseHeaders(409, 0);
@@ -595,7 +685,14 @@ public class Annotator {
         }
         String[] saltAndPasswordHash = PWH.getHash(password);
         User user = new User(email,saltAndPasswordHash[0],saltAndPasswordHash[1],false);
-        EMAIL2USER.put(email, user);
+        user.setNumberOfAnnotations(0, 0);
+        if(!SESSIONS.addUser(user)){
+            LOGGER.log(Level.INFO, "E-mail " + email + " is already in use.",
+                       new Timestamp(System.currentTimeMillis()));
+            exchange.sendResponseHeaders(409, 0);
+            exchange.getResponseBody().close();
+            return false;
+        }
         exchange.sendResponseHeaders(201, 0);
         exchange.getResponseBody().close();
         LOGGER.log(Level.INFO, "{0}: Successfully created account with e-mail address " + email,
@@ -617,19 +714,22 @@ public class Annotator {
         LOGGER.log(Level.INFO, "Initiating login for user " + email,
                    new Timestamp(System.currentTimeMillis()));
         String password = root.getValue("/password").toString().replace("\"", "");
-        if(!validateEmailAddress(email) || !EMAIL2USER.containsKey(email)){
+        User user = SESSIONS.getUser(email);
+        if(!validateEmailAddress(email) || user == null){
             exchange.sendResponseHeaders(401, 0);
             exchange.getResponseBody().close();
             return;
         }
-        else if(!EMAIL2USER.get(email).checkPasswordHash(password)){
+        else if(!user.checkPasswordHash(password)){
             LOGGER.log(Level.INFO, "Login for user " + email + " failed due to wrong password ",
                        new Timestamp(System.currentTimeMillis()));
             exchange.sendResponseHeaders(401, 0);
             exchange.getResponseBody().close();
             return;
         }
-        ID2USER.put(session_id, EMAIL2USER.get(email));
+        SESSIONS.getOrCreate(session_id).setUser(user);
+        Prefetcher.start(session_id, email);
+        RDFUtilitites.getNumberOfAnnotationsAsync(user);
         if(exchange.getResponseHeaders().isEmpty()){
             LOGGER.log(Level.INFO, "{0}: User " + email + " successfully logged in into existing account.",
                        new Timestamp(System.currentTimeMillis()));
@@ -639,7 +739,7 @@ public class Annotator {
         else
             LOGGER.log(Level.INFO, "{0}: User " + email + " successfully logged in after account creation.",
                        new Timestamp(System.currentTimeMillis()));
-        EMAIL2STATE.put(email, true);
+        user.setLoggedIn(true);
     }
     
     /**
@@ -649,9 +749,13 @@ public class Annotator {
      * @return 
      */
     private static String generateHash(String input){
-        MD.reset();
+        byte[] digest;
+        synchronized(MD){
+            MD.reset();
+            digest = MD.digest(input.getBytes());
+        }
         StringBuilder sb = new StringBuilder("");
-        for(byte b : MD.digest(input.getBytes())){
+        for(byte b : digest){
             sb.append(Integer.toHexString(b));
         }
         return "0x" + sb.toString().replace("0x", "");
@@ -670,7 +774,7 @@ public class Annotator {
             for(String cookie : h.get("Cookie"))
                 if(!session_id.equals("")
                    && cookie.startsWith("SESSION_ID=")
-                   && EMAIL2STATE.get(ID2USER.get(cookie.split("=")[1]).email)){
+                   && isLoggedIn(cookie.split("=")[1])){
                     session_id = cookie.split("=")[1];
                     break;
                 }
@@ -678,6 +782,17 @@ public class Annotator {
                     session_id = cookie.split("=")[1];
         return session_id;
     }
+    
+    /**
+     * Checks if a session with given ID belongs to a logged in user.
+     * 
+     * @param session_id
+     * @return 
+     */
+    private static boolean isLoggedIn(String session_id){
+        Session session = SESSIONS.get(session_id);
+        return session != null && session.isLoggedIn();
+    }
 
     /**
      * Retrieves query parameters from HTTP GET request URL.
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator.logic;
+
+import com.github.fuchsdavid.annotator.Main;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.jena.rdf.model.Model;
+
+/**
+ * Retrieves several resources per query and hands them out one by one
+ * to all sessions, leasing each of them to at most as many annotators
+ * as the configured redundancy through the {@link LeaseScheduler}.
+ * Resources are picked from the {@link CandidateIndex} once it is loaded,
+ * until then random offsets into the candidates on the SPARQL endpoint are used.
+ * 
+ * @author David Fuchs
+ */
+public class BatchSampler {
+    private static final Logger LOGGER = Logger.getLogger(BatchSampler.class.getName());
+    private static final Queue<Model> SAMPLES = new ConcurrentLinkedQueue<>();
+    private static final Set<String> QUEUED_SUBJECTS = ConcurrentHashMap.newKeySet();
+    
+    private static volatile CandidateIndex index;
+    private static volatile int fills = 0;
+    
+    private BatchSampler(){}
+    
+    /**
+     * Load index of resources not yet annotated from the SPARQL endpoint.
+     */
+    public static void loadIndex(){
+        LOGGER.log(Level.INFO, "{0}: Loading index of resources not yet annotated.",
+                   new Timestamp(System.currentTimeMillis()));
+        try{
+            CandidateIndex loaded = new CandidateIndex(RDFUtilitites.retrieveCandidateResources());
+            index = loaded;
+            CandidateFilter.getRejected().forEach(loaded::remove);
+            LOGGER.log(Level.INFO, "{0}: Loaded index of " + index.size() + " resources not yet annotated.",
+                       new Timestamp(System.currentTimeMillis()));
+        }
+        catch(Exception ex){
+            LOGGER.log(Level.WARNING, "{0}: Failed to load index of resources not yet annotated: " + ex.getMessage(),
+                       new Timestamp(System.currentTimeMillis()));
+        }
+    }
+    
+    /**
+     * Record that a resource has been annotated, so that it is no longer sampled.
+     * 
+     * @param iri 
+     */
+    public static void markAnnotated(String iri){
+        if(index != null)
+            index.remove(iri);
+    }
+    
+    /**
+     * Take next sampled resource, which can be leased to the annotator,
+     * retrieving a new batch when none is left. Retrievals yielding neither
+     * such nor rejected resources are repeated with a growing delay
+     * at most the configured number of times.
+     * 
+     * @param email e-mail address of the annotator
+     * @return model containing statements of a single resource
+     * @throws ServiceUnavailableException if no resource could be retrieved
+     */
+    public static Model take(String email){
+        for(int attempt = 0; ; ){
+            int generation = fills;
+            Model m = poll(email);
+            if(m != null) return m;
+            if(attempt == Main.retryAttempts
+               || (attempt > 0 && !CircuitBreaker.sleep(CircuitBreaker.delay(attempt - 1, Main.retryBackoff))))
+                throw new ServiceUnavailableException("No resources could be sampled.", Main.breakerOpenTime);
+            // Batches consisting of rejected resources only shrink the candidates, so they do not count.
+            if(!fill(email, generation))
+                attempt++;
+        }
+    }
+    
+    /**
+     * Take next sampled resource, which can be leased to the annotator, if there is any.
+     * Resources, which can still be leased to other annotators, stay queued for them.
+     * 
+     * @param email
+     * @return 
+     */
+    private static Model poll(String email){
+        for(int n = SAMPLES.size(); n > 0; n--){
+            Model m = SAMPLES.poll();
+            if(m == null) break;
+            String iri = m.listSubjects().next().getURI();
+            if(CandidateFilter.isRejected(iri)){
+                QUEUED_SUBJECTS.remove(iri);
+                continue;
+            }
+            boolean leased = LeaseScheduler.acquire(iri, email);
+            if(LeaseScheduler.isAvailable(iri, null))
+                SAMPLES.add(m);
+            else
+                QUEUED_SUBJECTS.remove(iri);
+            if(leased) return m;
+        }
+        return null;
+    }
+    
+    /**
+     * Retrieve a new batch of resources unless another thread has done so
+     * since the annotator last looked at the queue.
+     * 
+     * @param email
+     * @param generation number of batches retrieved when the annotator last looked at the queue
+     * @return true if any resource available to the annotator has been sampled or rejected
+     */
+    private static synchronized boolean fill(String email, int generation){
+        if(fills != generation) return true;
+        fills++;
+        LeaseScheduler.expire();
+        int rejected = CandidateFilter.getRejected().size();
+        Collection<Model> models;
+        if(index != null && index.size() > 0)
+            models = TripleCache.retrieve(index.sample(Main.batchSize, Main.RNG));
+        else{
+            Model batch = RDFUtilitites.retrieveBatch(email, Main.batchSize);
+            if(batch == null) return false;
+            models = CandidateFilter.validate(null, RDFUtilitites.splitBySubject(batch));
+            TripleCache.putAll(models);
+        }
+        int added = 0, available = 0;
+        for(Model m : models){
+            String iri = m.listSubjects().next().getURI();
+            if(!CandidateFilter.isRejected(iri) && LeaseScheduler.isAvailable(iri, null) && QUEUED_SUBJECTS.add(iri)){
+                SAMPLES.add(m);
+                added++;
+                if(LeaseScheduler.isAvailable(iri, email))
+                    available++;
+            }
+        }
+        LOGGER.log(Level.INFO, "{0}: Sampled " + added + " resources in a single query.",
+                   new Timestamp(System.currentTimeMillis()));
+        return available > 0 || CandidateFilter.getRejected().size() > rejected;
+    }
+}
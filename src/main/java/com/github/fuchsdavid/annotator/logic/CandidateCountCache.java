@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator.logic;
+
+import com.github.fuchsdavid.annotator.Main;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shared cache of the number of resources not yet annotated, which is expensive
+ * to compute on the SPARQL endpoint. Only one thread refreshes an expired value,
+ * without holding the lock, while the others keep using the stale one. A failed
+ * refresh keeps the stale value and is not repeated for a few seconds.
+ * 
+ * @author David Fuchs
+ */
+public class CandidateCountCache {
+    private static final Logger LOGGER = Logger.getLogger(CandidateCountCache.class.getName());
+    
+    private static final long FAILURE_BACKOFF_SECONDS = 5;
+    
+    private static int count;
+    private static boolean known = false;
+    private static boolean refreshing = false;
+    private static int decrementedWhileRefreshing = 0;
+    private static long expiresAt = System.nanoTime();
+    
+    private CandidateCountCache(){}
+    
+    /**
+     * Get the number of resources not yet annotated, querying the SPARQL endpoint
+     * only if the cached value has expired.
+     * 
+     * @return 
+     * @throws IllegalStateException if the number is not known and cannot be retrieved
+     */
+    public static int get(){
+        synchronized(CandidateCountCache.class){
+            while(true){
+                boolean expired = System.nanoTime() - expiresAt >= 0;
+                if(known && (!expired || refreshing))
+                    return count;
+                if(!refreshing){
+                    if(!expired)
+                        throw new IllegalStateException("The number of resources not yet annotated is unknown.");
+                    break;
+                }
+                try{
+                    CandidateCountCache.class.wait();
+                }
+                catch(InterruptedException ex){
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for the number of resources.");
+                }
+            }
+            refreshing = true;
+            decrementedWhileRefreshing = 0;
+        }
+        LOGGER.log(Level.INFO, "{0}: Refreshing the number of resources not yet annotated.",
+                   new Timestamp(System.currentTimeMillis()));
+        try{
+            int fresh = RDFUtilitites.getNumberOfResourcesNotYetAnnotated();
+            synchronized(CandidateCountCache.class){
+                count = Math.max(0, fresh - decrementedWhileRefreshing);
+                known = true;
+                expiresAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(Main.countTTL);
+                return count;
+            }
+        }
+        catch(RuntimeException ex){
+            LOGGER.log(Level.WARNING, "{0}: Failed to refresh the number of resources not yet annotated: "
+                                      + ex.getMessage(),
+                       new Timestamp(System.currentTimeMillis()));
+            synchronized(CandidateCountCache.class){
+                expiresAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(FAILURE_BACKOFF_SECONDS);
+                if(!known) throw ex;
+                return count;
+            }
+        }
+        finally{
+            synchronized(CandidateCountCache.class){
+                refreshing = false;
+                CandidateCountCache.class.notifyAll();
+            }
+        }
+    }
+    
+    /**
+     * Account for resources, which have just been annotated.
+     * 
+     * @param numberOfAnnotatedResources 
+     */
+    public static synchronized void decrement(int numberOfAnnotatedResources){
+        count = Math.max(0, count - numberOfAnnotatedResources);
+        if(refreshing)
+            decrementedWhileRefreshing += numberOfAnnotatedResources;
+    }
+    
+    /**
+     * Force the next call of {@link #get()} to query the SPARQL endpoint.
+     */
+    public static synchronized void invalidate(){
+        expiresAt = System.nanoTime();
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator.logic;
+
+import com.github.fuchsdavid.annotator.Main;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.jena.rdf.model.Model;
+
+/**
+ * Validates retrieved resources before they are cached or handed out, so that
+ * clients never receive resources without enough triples to be annotated.
+ * IRIs of rejected resources are remembered and removed from sampling.
+ * 
+ * @author David Fuchs
+ */
+public class CandidateFilter {
+    private static final Logger LOGGER = Logger.getLogger(CandidateFilter.class.getName());
+    private static final Set<String> REJECTED = ConcurrentHashMap.newKeySet();
+    
+    private CandidateFilter(){}
+    
+    /**
+     * Check if a resource has enough triples to be annotated.
+     * 
+     * @param m model containing statements of a single resource
+     * @return 
+     */
+    public static boolean accept(Model m){
+        return m.size() >= Main.minTriples;
+    }
+    
+    /**
+     * Keep only resources which have enough triples and reject all others,
+     * including requested resources for which no triples have been retrieved.
+     * 
+     * @param requested IRIs of the requested resources or null if they are not known
+     * @param models models each containing statements of a single resource
+     * @return accepted models
+     */
+    public static List<Model> validate(Collection<String> requested, Collection<Model> models){
+        List<Model> accepted = new ArrayList<>(models.size());
+        Set<String> missing = (requested == null ? new HashSet<>() : new HashSet<>(requested));
+        int rejected = 0;
+        for(Model m : models){
+            String iri = m.listSubjects().next().getURI();
+            missing.remove(iri);
+            if(accept(m))
+                accepted.add(m);
+            else if(reject(iri))
+                rejected++;
+        }
+        for(String iri : missing)
+            if(reject(iri))
+                rejected++;
+        if(rejected > 0)
+            LOGGER.log(Level.INFO, "{0}: Rejected " + rejected + " empty or degenerate resources.",
+                       new Timestamp(System.currentTimeMillis()));
+        return accepted;
+    }
+    
+    /**
+     * Remember that a resource must not be handed out and stop sampling it.
+     * 
+     * @param iri
+     * @return true if the resource has not been rejected before
+     */
+    public static boolean reject(String iri){
+        if(!REJECTED.add(iri)) return false;
+        BatchSampler.markAnnotated(iri);
+        return true;
+    }
+    
+    /**
+     * Check if a resource has been rejected.
+     * 
+     * @param iri
+     * @return 
+     */
+    public static boolean isRejected(String iri){
+        return REJECTED.contains(iri);
+    }
+    
+    /**
+     * Get IRIs of all rejected resources.
+     * 
+     * @return 
+     */
+    public static Collection<String> getRejected(){
+        return REJECTED;
+    }
+}
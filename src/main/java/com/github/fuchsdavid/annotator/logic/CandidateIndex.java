@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator.logic;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * In-memory index of resources, which can be annotated.
+ * IRIs are sorted and stored as UTF-8 bytes in a single array, identified
+ * by their order; resources still available for annotation are kept
+ * in an array of identifiers, so that a random resource can be picked
+ * in constant time.
+ * 
+ * @author David Fuchs
+ */
+public class CandidateIndex {
+    private final byte[] dictionary;
+    private final int[] offsets;
+    private final int[] available;
+    private final int[] slots;
+    private int size;
+    
+    /**
+     * Create index of given IRIs.
+     * 
+     * @param iris 
+     */
+    public CandidateIndex(Collection<String> iris){
+        List<byte[]> encoded = new ArrayList<>(iris.size());
+        iris.forEach((String iri) -> encoded.add(iri.getBytes(StandardCharsets.UTF_8)));
+        encoded.sort(Arrays::compareUnsigned);
+        int n = 0, length = 0;
+        for(int i=0; i<encoded.size(); i++){
+            if(i > 0 && Arrays.equals(encoded.get(i), encoded.get(i-1))) continue;
+            encoded.set(n++, encoded.get(i));
+            length += encoded.get(i).length;
+        }
+        dictionary = new byte[length];
+        offsets = new int[n+1];
+        available = new int[n];
+        slots = new int[n];
+        for(int id=0; id<n; id++){
+            byte[] iri = encoded.get(id);
+            System.arraycopy(iri, 0, dictionary, offsets[id], iri.length);
+            offsets[id+1] = offsets[id] + iri.length;
+            available[id] = id;
+            slots[id] = id;
+        }
+        size = n;
+    }
+    
+    /**
+     * Get number of resources still available for annotation.
+     * 
+     * @return 
+     */
+    public synchronized int size(){
+        return size;
+    }
+    
+    /**
+     * Check whether a resource is still available for annotation.
+     * 
+     * @param iri
+     * @return 
+     */
+    public synchronized boolean contains(String iri){
+        int id = find(iri);
+        return id >= 0 && slots[id] >= 0;
+    }
+    
+    /**
+     * Pick distinct random resources still available for annotation.
+     * 
+     * @param limit maximum number of resources
+     * @param rng
+     * @return 
+     */
+    public synchronized List<String> sample(int limit, Random rng){
+        int k = Math.min(limit, size);
+        List<String> iris = new ArrayList<>(k);
+        for(int i=0; i<k; i++){
+            swap(i, i + rng.nextInt(size - i));
+            iris.add(decode(available[i]));
+        }
+        return iris;
+    }
+    
+    /**
+     * Make resource unavailable for annotation.
+     * 
+     * @param iri
+     * @return true if the resource was available
+     */
+    public synchronized boolean remove(String iri){
+        int id = find(iri);
+        if(id < 0 || slots[id] < 0) return false;
+        swap(slots[id], --size);
+        slots[id] = -1;
+        return true;
+    }
+    
+    /**
+     * Swap two slots of available resources.
+     * 
+     * @param i
+     * @param j 
+     */
+    private void swap(int i, int j){
+        int a = available[i];
+        available[i] = available[j];
+        available[j] = a;
+        slots[available[i]] = i;
+        slots[available[j]] = j;
+    }
+    
+    /**
+     * Find identifier of an IRI by binary search in the dictionary.
+     * 
+     * @param iri
+     * @return identifier or a negative number if the IRI is not in the dictionary
+     */
+    private int find(String iri){
+        byte[] key = iri.getBytes(StandardCharsets.UTF_8);
+        int low = 0, high = offsets.length - 2;
+        while(low <= high){
+            int mid = (low + high) >>> 1;
+            int c = Arrays.compareUnsigned(dictionary, offsets[mid], offsets[mid+1], key, 0, key.length);
+            if(c < 0) low = mid + 1;
+            else if(c > 0) high = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+    
+    /**
+     * Decode IRI from the dictionary.
+     * 
+     * @param id
+     * @return 
+     */
+    private String decode(int id){
+        return new String(dictionary, offsets[id], offsets[id+1] - offsets[id], StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator.logic;
+
+import java.sql.Timestamp;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Circuit breaker guarding calls to an unreliable service. After a number of
+ * consecutive failures the circuit opens and calls fail fast. Once the open
+ * time elapses, a single probing call is let through, which either closes
+ * the circuit again or reopens it. Only exceptions classified as failures
+ * of the service are retried and counted; any other exception shows that
+ * the service has answered and is rethrown immediately.
+ *
+ * @author David Fuchs
+ */
+public class CircuitBreaker {
+    private static final Logger LOGGER = Logger.getLogger(CircuitBreaker.class.getName());
+    private static final Random RNG = new Random();
+
+    /**
+     * States of the circuit.
+     */
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openTime;
+    private final Predicate<RuntimeException> isFailure;
+    private State state = State.CLOSED;
+    private int failures = 0;
+    private long openedAt = 0;
+
+    /**
+     * Create closed circuit breaker.
+     *
+     * @param name name of the guarded service used in log messages
+     * @param failureThreshold number of consecutive failures opening the circuit
+     * @param openTime time in milliseconds for which the circuit stays open
+     * @param isFailure test whether an exception is a failure of the service
+     */
+    public CircuitBreaker(String name, int failureThreshold, long openTime, Predicate<RuntimeException> isFailure){
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openTime = openTime;
+        this.isFailure = isFailure;
+    }
+
+    /**
+     * Call the service, retrying failed calls with exponential backoff and jitter.
+     *
+     * @param <T>
+     * @param action
+     * @param attempts maximum number of attempts
+     * @param backoff base delay in milliseconds before the second attempt
+     * @return result of the first successful attempt
+     * @throws ServiceUnavailableException if the circuit is open
+     * @throws RuntimeException failure of the last attempt or any other exception
+     */
+    public <T> T call(Supplier<T> action, int attempts, long backoff){
+        for(int attempt = 0; ; attempt++){
+            acquire();
+            try{
+                T result = action.get();
+                onSuccess();
+                return result;
+            }
+            catch(RuntimeException ex){
+                if(!isFailure.test(ex)){
+                    onSuccess();
+                    throw ex;
+                }
+                onFailure();
+                if(attempt + 1 >= attempts)
+                    throw ex;
+                LOGGER.log(Level.WARNING, "{0}: Call to " + name + " failed, retrying: " + ex.getMessage(),
+                           new Timestamp(System.currentTimeMillis()));
+                if(!sleep(delay(attempt, backoff)))
+                    throw ex;
+            }
+        }
+    }
+
+    /**
+     * Get current state of the circuit.
+     *
+     * @return
+     */
+    public synchronized State getState(){
+        return state;
+    }
+
+    /**
+     * Let a call through or fail fast if the circuit is open.
+     *
+     * @throws ServiceUnavailableException
+     */
+    synchronized void acquire(){
+        long now = System.currentTimeMillis();
+        switch(state){
+            case OPEN:      if(now - openedAt < openTime)
+                                throw new ServiceUnavailableException(name + " is unavailable.",
+                                                                      openTime - (now - openedAt));
+                            state = State.HALF_OPEN;
+                            LOGGER.log(Level.INFO, "{0}: Probing " + name + ".", new Timestamp(now));
+                            break;
+            case HALF_OPEN: throw new ServiceUnavailableException(name + " is being probed.", openTime);
+            default:        break;
+        }
+    }
+
+    /**
+     * Record successful call.
+     */
+    synchronized void onSuccess(){
+        if(state != State.CLOSED)
+            LOGGER.log(Level.INFO, "{0}: Circuit of " + name + " closed.",
+                       new Timestamp(System.currentTimeMillis()));
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    /**
+     * Record failed call, opening the circuit if there have been too many of them.
+     */
+    synchronized void onFailure(){
+        if(state == State.HALF_OPEN || ++failures >= failureThreshold){
+            if(state != State.OPEN)
+                LOGGER.log(Level.WARNING, "{0}: Circuit of " + name + " opened for " + openTime + " ms.",
+                           new Timestamp(System.currentTimeMillis()));
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            failures = 0;
+        }
+    }
+
+    /**
+     * Compute delay before the next attempt as a random time up to an exponentially
+     * growing bound, which is capped at 64 times the base delay.
+     *
+     * @param attempt number of the failed attempt starting from zero
+     * @param backoff base delay in milliseconds
+     * @return delay in milliseconds
+     */
+    public static long delay(int attempt, long backoff){
+        long bound = backoff << Math.min(attempt, 6);
+        return (bound <= 0 ? 0 : (long)(RNG.nextDouble() * bound) + 1);
+    }
+
+    /**
+     * Sleep for given time.
+     *
+     * @param millis
+     * @return false if the thread has been interrupted
+     */
+    static boolean sleep(long millis){
+        try{
+            Thread.sleep(millis);
+            return true;
+        }
+        catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator.logic;
+
+import com.github.fuchsdavid.annotator.Main;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Central registry of time-limited leases on resources handed out to annotators,
+ * so that a resource is annotated concurrently by no more annotators than
+ * the configured redundancy. A lease is released once the annotation is submitted,
+ * when the resource is dropped from the session of the annotator or when it expires.
+ * Resources annotated by enough annotators are remembered only in a bounded form,
+ * as they are expected to leave the candidates once their annotations are flushed.
+ * 
+ * @author David Fuchs
+ */
+public class LeaseScheduler {
+    private static final int COMPLETED_CAPACITY = 65536;
+    private static final Map<String,Leases> IRI2LEASES = new HashMap<>();
+    private static final Map<String,Boolean> COMPLETED = new LinkedHashMap<String,Boolean>(){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,Boolean> eldest){
+            return size() > COMPLETED_CAPACITY;
+        }
+    };
+    
+    private LeaseScheduler(){}
+    
+    /**
+     * Lease a resource to an annotator unless the annotator already holds or has
+     * annotated it or the resource is leased to enough other annotators.
+     * 
+     * @param iri
+     * @param email e-mail address of the annotator
+     * @return true if the lease has been granted
+     */
+    public static boolean acquire(String iri, String email){
+        return acquire(iri, email, System.currentTimeMillis());
+    }
+    
+    static synchronized boolean acquire(String iri, String email, long now){
+        if(!isAvailable(iri, email, now)) return false;
+        IRI2LEASES.computeIfAbsent(iri, (String key) -> new Leases())
+                  .holders.put(email, now + TimeUnit.SECONDS.toMillis(Main.leaseTime));
+        return true;
+    }
+    
+    /**
+     * Check if a resource can be leased to an annotator.
+     * 
+     * @param iri
+     * @param email e-mail address of the annotator or null to check for any annotator
+     * @return 
+     */
+    public static boolean isAvailable(String iri, String email){
+        return isAvailable(iri, email, System.currentTimeMillis());
+    }
+    
+    static synchronized boolean isAvailable(String iri, String email, long now){
+        if(COMPLETED.containsKey(iri)) return false;
+        Leases leases = IRI2LEASES.get(iri);
+        if(leases == null) return true;
+        leases.expire(now);
+        return leases.count() < Main.redundancy
+               && !leases.holders.containsKey(email) && !leases.annotators.contains(email);
+    }
+    
+    /**
+     * Release lease without annotating the resource.
+     * 
+     * @param iri
+     * @param email e-mail address of the annotator
+     */
+    public static synchronized void release(String iri, String email){
+        Leases leases = IRI2LEASES.get(iri);
+        if(leases != null && leases.holders.remove(email) != null && leases.count() == 0)
+            IRI2LEASES.remove(iri);
+    }
+    
+    /**
+     * Record that an annotator has annotated a resource and release the lease.
+     * Once the configured redundancy is reached, the leases of the resource are
+     * dropped and only the IRI is remembered among the most recently completed resources.
+     * 
+     * @param iri
+     * @param email e-mail address of the annotator
+     * @return true if the resource has been annotated by as many annotators as the configured redundancy
+     */
+    public static synchronized boolean complete(String iri, String email){
+        if(COMPLETED.containsKey(iri)) return true;
+        Leases leases = IRI2LEASES.computeIfAbsent(iri, (String key) -> new Leases());
+        leases.holders.remove(email);
+        leases.annotators.add(email);
+        if(leases.annotators.size() < Main.redundancy) return false;
+        IRI2LEASES.remove(iri);
+        COMPLETED.put(iri, Boolean.TRUE);
+        return true;
+    }
+    
+    /**
+     * Drop expired leases of all resources.
+     */
+    public static void expire(){
+        expire(System.currentTimeMillis());
+    }
+    
+    static synchronized void expire(long now){
+        Iterator<Leases> it = IRI2LEASES.values().iterator();
+        while(it.hasNext()){
+            Leases leases = it.next();
+            leases.expire(now);
+            if(leases.count() == 0)
+                it.remove();
+        }
+    }
+    
+    /**
+     * Leases of a single resource together with the annotators who have already annotated it.
+     */
+    private static class Leases {
+        private final Map<String,Long> holders = new HashMap<>(2);
+        private final Set<String> annotators = new HashSet<>(2);
+        
+        private int count(){
+            return holders.size() + annotators.size();
+        }
+        
+        private void expire(long now){
+            holders.values().removeIf((Long expiresAt) -> expiresAt <= now);
+        }
+    }
+}
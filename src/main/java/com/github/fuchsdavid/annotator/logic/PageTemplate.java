@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator.logic;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Page split once into static UTF-8 segments with insertion points between
+ * them, so that it can be rendered by streaming the segments and the dynamic
+ * content directly to the client.
+ *
+ * @author David Fuchs
+ */
+public final class PageTemplate {
+    private final byte[][] segments;
+
+    private PageTemplate(byte[][] segments){
+        this.segments = segments;
+    }
+
+    /**
+     * Compile template from a page. Insertion points are placed right before
+     * the first occurrence of each marker following the previous one.
+     *
+     * @param page
+     * @param markers
+     * @return
+     * @throws IOException if the page cannot be read or does not contain a marker
+     */
+    public static PageTemplate compile(InputStream page, String... markers) throws IOException{
+        String source;
+        try(InputStream is = page){
+            source = new String(is.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        byte[][] segments = new byte[markers.length + 1][];
+        int from = 0;
+        for(int i = 0; i < markers.length; i++){
+            int to = source.indexOf(markers[i], from);
+            if(to < 0)
+                throw new IOException("Template does not contain " + markers[i]);
+            segments[i] = source.substring(from, to).getBytes(StandardCharsets.UTF_8);
+            from = to;
+        }
+        segments[markers.length] = source.substring(from).getBytes(StandardCharsets.UTF_8);
+        return new PageTemplate(segments);
+    }
+
+    /**
+     * Write the page, letting the caller fill each insertion point in order.
+     *
+     * @param out
+     * @param writer
+     * @throws IOException
+     */
+    public void render(OutputStream out, SlotWriter writer) throws IOException{
+        for(int i = 0; i < segments.length - 1; i++){
+            out.write(segments[i]);
+            writer.write(i, out);
+        }
+        out.write(segments[segments.length - 1]);
+    }
+
+    /**
+     * Write text encoded in UTF-8 with XML special characters escaped.
+     *
+     * @param out
+     * @param text
+     * @throws IOException
+     */
+    public static void writeEscaped(OutputStream out, String text) throws IOException{
+        StringBuilder sb = new StringBuilder(text.length() + 16);
+        for(int i = 0; i < text.length(); i++){
+            char c = text.charAt(i);
+            switch(c){
+                case '<': sb.append("&lt;");   break;
+                case '>': sb.append("&gt;");   break;
+                case '&': sb.append("&amp;");  break;
+                case '"': sb.append("&quot;"); break;
+                default:  sb.append(c);
+            }
+        }
+        out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Fills insertion points of a template.
+     */
+    @FunctionalInterface
+    public interface SlotWriter {
+        /**
+         * Write content of an insertion point.
+         *
+         * @param slot index of the insertion point
+         * @param out
+         * @throws IOException
+         */
+        void write(int slot, OutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator.logic;
+
+import com.github.fuchsdavid.annotator.ExecutorMode;
+import com.github.fuchsdavid.annotator.Main;
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps a queue of resource snapshots retrieved in the background for each session, so that
+ * the request handlers do not have to wait for the SPARQL endpoint. A queue belongs to the
+ * annotator it has been created for and is replaced once another annotator logs in
+ * within the same session.
+ * 
+ * @author David Fuchs
+ */
+public class Prefetcher {
+    private static final Logger LOGGER = Logger.getLogger(Prefetcher.class.getName());
+    private static final Map<String,Queue> ID2QUEUE = new ConcurrentHashMap<>();
+    private static final long WAIT_FOR_PENDING_SECONDS = 30;
+    private static final long WAIT_SLICE_MILLIS = 100;
+    
+    private static ExecutorService executor;
+    
+    private Prefetcher(){}
+    
+    /**
+     * Take next snapshot prepared for a session and schedule retrieval of another one.
+     * Falls back to synchronous retrieval if prefetching is disabled or
+     * no retrieval is in progress.
+     * 
+     * @param session_id
+     * @param email e-mail address of the annotator
+     * @return 
+     * @throws InterruptedException 
+     */
+    public static ResourceSnapshot take(String session_id, String email)
+            throws InterruptedException{
+        if(Main.prefetchDepth == 0)
+            return ResourceSnapshot.of(RDFUtilitites.retrieveTriples(email));
+        Queue queue = getQueue(session_id, email);
+        ResourceSnapshot m = queue.ready.poll();
+        if(m == null && queue.pending.get() > 0){
+            LOGGER.log(Level.INFO, "{0}: Waiting for prefetched data.",
+                       new Timestamp(System.currentTimeMillis()));
+            // Stop waiting as soon as the pending retrievals have failed.
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(WAIT_FOR_PENDING_SECONDS);
+            while(m == null && queue.pending.get() > 0 && System.currentTimeMillis() < deadline)
+                m = queue.ready.poll(WAIT_SLICE_MILLIS, TimeUnit.MILLISECONDS);
+            if(m == null)
+                m = queue.ready.poll();
+        }
+        if(m == null)
+            m = ResourceSnapshot.of(RDFUtilitites.retrieveTriples(email));
+        queue.refill();
+        return m;
+    }
+    
+    /**
+     * Start filling the queue of a session in advance.
+     * 
+     * @param session_id
+     * @param email e-mail address of the annotator
+     */
+    public static void start(String session_id, String email){
+        if(Main.prefetchDepth > 0)
+            getQueue(session_id, email).refill();
+    }
+    
+    /**
+     * Get queue of a session, replacing it if it has been created for another annotator.
+     * 
+     * @param session_id
+     * @param email e-mail address of the annotator
+     * @return 
+     */
+    private static Queue getQueue(String session_id, String email){
+        Queue[] replaced = new Queue[1];
+        Queue queue = ID2QUEUE.compute(session_id, (String id, Queue q) -> {
+            if(q != null && q.email.equals(email)) return q;
+            replaced[0] = q;
+            return new Queue(email);
+        });
+        if(replaced[0] != null)
+            replaced[0].discard();
+        return queue;
+    }
+    
+    /**
+     * Discard snapshots prepared for a session.
+     * 
+     * @param session_id 
+     */
+    public static void discard(String session_id){
+        Queue queue = ID2QUEUE.remove(session_id);
+        if(queue != null)
+            queue.discard();
+    }
+    
+    /**
+     * Lazily create executor running the background retrievals.
+     * 
+     * @return 
+     */
+    private static synchronized ExecutorService getExecutor(){
+        if(executor == null)
+            executor = Executors.newFixedThreadPool(Main.prefetchThreads,
+                                                    ExecutorMode.namedThreadFactory("prefetch-", true));
+        return executor;
+    }
+    
+    /**
+     * Snapshots retrieved in advance for a single session.
+     */
+    private static class Queue {
+        private final String email;
+        private final BlockingQueue<ResourceSnapshot> ready = new LinkedBlockingQueue<>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean discarded = false;
+        
+        private Queue(String email){
+            this.email = email;
+        }
+        
+        /**
+         * Drop all snapshots and release their leases, including those of retrievals still in progress.
+         */
+        private void discard(){
+            discarded = true;
+            ResourceSnapshot m;
+            while((m = ready.poll()) != null)
+                LeaseScheduler.release(m.getSubject(), email);
+        }
+        
+        /**
+         * Schedule retrievals until the queue holds the configured number of snapshots.
+         */
+        private void refill(){
+            int p;
+            while(ready.size() + (p = pending.get()) < Main.prefetchDepth){
+                if(!pending.compareAndSet(p, p+1)) continue;
+                getExecutor().execute(() -> {
+                    try{
+                        ResourceSnapshot m = ResourceSnapshot.of(RDFUtilitites.retrieveTriples(email));
+                        ready.add(m);
+                        // Retrievals completing after the queue has been discarded give up their lease.
+                        if(discarded && ready.remove(m))
+                            LeaseScheduler.release(m.getSubject(), email);
+                    }
+                    catch(Exception ex){
+                        LOGGER.log(Level.SEVERE, "{0}: " + ex.getMessage(),
+                                   new Timestamp(System.currentTimeMillis()));
+                    }
+                    finally{
+                        pending.decrementAndGet();
+                    }
+                });
+            }
+        }
+    }
+}
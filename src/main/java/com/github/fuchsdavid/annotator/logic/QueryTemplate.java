@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator.logic;
+
+import com.github.fuchsdavid.annotator.Main;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.io.IOUtils;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.syntax.ElementData;
+import org.apache.jena.sparql.syntax.ElementGroup;
+import org.apache.jena.sparql.syntax.ElementSubQuery;
+import org.apache.jena.sparql.syntax.ElementVisitorBase;
+import org.apache.jena.sparql.syntax.ElementWalker;
+import org.apache.jena.sparql.syntax.syntaxtransform.QueryTransformOps;
+
+/**
+ * SPARQL query loaded from resource file and parsed only once.
+ * Parameters are bound by substituting variables in a copy of the parsed query.
+ * 
+ * @author David Fuchs
+ */
+public class QueryTemplate {
+    private static final Map<String,QueryTemplate> NAME2TEMPLATE = new ConcurrentHashMap<>();
+    
+    private final Query query;
+    
+    /**
+     * Parse query template.
+     * 
+     * @param query 
+     */
+    public QueryTemplate(String query){
+        this.query = QueryFactory.create(query);
+    }
+    
+    /**
+     * Get template parsed from resource file /sparql/name.sparql.
+     * 
+     * @param name
+     * @return 
+     */
+    public static QueryTemplate get(String name){
+        return NAME2TEMPLATE.computeIfAbsent(name, (String n) -> {
+            try (InputStream is = Main.class.getResourceAsStream("/sparql/" + n + ".sparql")) {
+                return new QueryTemplate(IOUtils.toString(is, StandardCharsets.UTF_8));
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+    
+    /**
+     * Get query without any parameters bound.
+     * 
+     * @return 
+     */
+    public Query bind(){
+        return query.cloneQuery();
+    }
+    
+    /**
+     * Get query with variables substituted by given values.
+     * 
+     * @param values
+     * @return 
+     */
+    public Query bind(Map<String,Node> values){
+        Map<Var,Node> substitution = new HashMap<>();
+        values.forEach((String name, Node value) -> substitution.put(Var.alloc(name), value));
+        return QueryTransformOps.transform(query.cloneQuery(), substitution);
+    }
+    
+    /**
+     * Get query with variables substituted by given values and with offset and limit
+     * set on the first subquery, or on the query itself if it has no subquery.
+     * 
+     * @param values
+     * @param offset
+     * @param limit
+     * @return 
+     */
+    public Query bind(Map<String,Node> values, long offset, long limit){
+        Query q = bind(values);
+        Query[] slice = { q };
+        ElementWalker.walk(q.getQueryPattern(), new ElementVisitorBase(){
+            @Override
+            public void visit(ElementSubQuery el){
+                if(slice[0] == q) slice[0] = el.getQuery();
+            }
+        });
+        slice[0].setOffset(offset);
+        slice[0].setLimit(limit);
+        return q;
+    }
+    
+    /**
+     * Get query, whose pattern is preceded by a VALUES block assigning given values to a variable.
+     * 
+     * @param name name of the variable
+     * @param values
+     * @return 
+     */
+    public Query bindValues(String name, Collection<Node> values){
+        Query q = bind();
+        Var var = Var.alloc(name);
+        ElementData data = new ElementData();
+        data.add(var);
+        values.forEach((Node value) -> data.add(BindingFactory.binding(var, value)));
+        ((ElementGroup)q.getQueryPattern()).getElements().add(0, data);
+        return q;
+    }
+}
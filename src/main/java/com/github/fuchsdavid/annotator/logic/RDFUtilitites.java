@@ -17,24 +17,32 @@
 package com.github.fuchsdavid.annotator.logic;
 
 import com.github.fuchsdavid.annotator.Main;
-import static com.github.fuchsdavid.annotator.Main.SPARQLendpoint;
-import com.sun.net.httpserver.HttpExchange;
-import java.io.IOException;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import com.github.fuchsdavid.annotator.User;
 import java.sql.Timestamp;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.apache.commons.io.IOUtils;
-import org.apache.jena.query.ParameterizedSparqlString;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Query;
 import org.apache.jena.query.QueryExecution;
-import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QuerySolution;
 import org.apache.jena.query.ResultSet;
 import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
 import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.sparql.modify.request.QuadDataAcc;
+import org.apache.jena.sparql.modify.request.UpdateDataInsert;
+import org.apache.jena.update.UpdateRequest;
+import org.apache.jena.vocabulary.RDF;
 
 /**
  * This is a convenience class for accessing RDF data structures provided by APACHE JENA.
@@ -46,80 +54,128 @@ public class RDFUtilitites {
     
     public static final PrefixMapping PM = PrefixMapping.Factory.create();
     
-    private static String queryForNewAnnotation;
-    private static String queryForNumberOfNotAnnotatedResorces;
-    private static String queryForNumberOfAnnotationsOfCurrentAnnotator;
+    public static final String ONTOLOGY = "http://github.com/Fuchs-David/Annotator/tree/master/src/ontology/";
+    public static final Node ANNOTATED_BY = NodeFactory.createURI(ONTOLOGY + "annotatedBy");
     
-    static{
-        try {
-            queryForNewAnnotation = IOUtils.toString(
-                                        Main.class.getResourceAsStream("/sparql/resourcesToBeAnnotatedQuery.sparql"),
-                                        StandardCharsets.UTF_8.name());
-            queryForNumberOfNotAnnotatedResorces = IOUtils.toString(
-                                    Main.class.getResourceAsStream("/sparql/numberOfResourcesNotYetAnnotated.sparql"),
-                                    StandardCharsets.UTF_8.name());
-            queryForNumberOfAnnotationsOfCurrentAnnotator = IOUtils.toString(
-                                    Main.class.getResourceAsStream("/sparql/numberOfResourceAnnotatedByCurrentAnnotator.sparql"),
-                                    StandardCharsets.UTF_8);
-        }
-        catch (IOException ex) {
-            Logger.getLogger(RDFUtilitites.class.getName()).log(Level.SEVERE, null, ex);
-        }
-    }
+    private static final QueryTemplate QUERY_FOR_NEW_ANNOTATION = QueryTemplate.get("resourcesToBeAnnotatedQuery");
+    private static final QueryTemplate QUERY_FOR_NUMBER_OF_NOT_ANNOTATED_RESOURCES
+            = QueryTemplate.get("numberOfResourcesNotYetAnnotated");
+    private static final QueryTemplate QUERY_FOR_NUMBER_OF_ANNOTATIONS_BY_ANNOTATOR
+            = QueryTemplate.get("numberOfAnnotationsByAnnotator");
+    private static final QueryTemplate QUERY_FOR_CANDIDATE_RESOURCES = QueryTemplate.get("candidateResourcesQuery");
+    private static final QueryTemplate QUERY_FOR_RESOURCE_TRIPLES = QueryTemplate.get("resourceTriplesQuery");
+    
+    private static CompletableFuture<Void> numberOfAnnotationsLoader;
     
     private RDFUtilitites(){}
     /**
-     * Retrieves triples from SPARQL endpoint using query loaded from resource file.
+     * Retrieves triples for an annotator from SPARQL endpoint using query loaded from resource file.
      * 
-     * @param exchange
-     * @param session_id
+     * @param email e-mail address of the annotator
      * @return 
-     * @throws java.io.IOException 
      */
-    public static Model retrieveTriples(HttpExchange exchange,String session_id) throws IOException{
-        Model m = null;
-        try {
-            String currentAnnotator = "mailto:" + Main.ID2USER.get(session_id).email;
-            do{
-                ParameterizedSparqlString pss;
-                ParameterizedSparqlString p;
-                int offset;
-                pss = new ParameterizedSparqlString(queryForNewAnnotation);
-                p = new ParameterizedSparqlString(queryForNumberOfNotAnnotatedResorces);
-                LOGGER.log(Level.INFO, "{0}: Finding the number of resources not yet annotated.",
-                           new Timestamp(System.currentTimeMillis()));
-                QueryExecution qe=QueryExecutionFactory.sparqlService(SPARQLendpoint, p.asQuery());
-                qe.setTimeout(1, TimeUnit.SECONDS, 1, TimeUnit.SECONDS);
-                ResultSet rs = qe.execSelect();
-                int numberOfResourcesForAnnotation;
-                try{
-                    numberOfResourcesForAnnotation = rs.next().getLiteral("count").getInt();
-                    qe.close();
-                    if(numberOfResourcesForAnnotation <= 0) continue;
-                }
-                catch(Exception ex){
-                    qe.close();
-                    continue;
-                }
-                offset = Main.RNG.nextInt(numberOfResourcesForAnnotation);
-                pss.setLiteral("offset", offset);
-                pss.setLiteral("limit", 1);
-                pss.setIri("current_annotator", new URL(currentAnnotator));
-                LOGGER.log(Level.INFO, "{0}: Querying SPARQL endpoint for user: " + Main.ID2USER.get(session_id).email,
-                           new Timestamp(System.currentTimeMillis()));
-                qe=QueryExecutionFactory.sparqlService(SPARQLendpoint,pss.asQuery());
-                qe.setTimeout(1, TimeUnit.SECONDS, 2, TimeUnit.SECONDS);
-                m = qe.execConstruct();
-                m.setNsPrefixes(PM);
-                qe.close();
-            }while(m==null || m.isEmpty());
+    public static Model retrieveTriples(String email){
+        return BatchSampler.take(email);
+    }
+    
+    /**
+     * Retrieves triples of several randomly chosen resources in a single query.
+     * 
+     * @param email e-mail address of the annotator
+     * @param limit maximum number of resources
+     * @return model or null if the number of resources not yet annotated is unknown
+     */
+    public static Model retrieveBatch(String email, int limit){
+        int numberOfResourcesForAnnotation;
+        try{
+            numberOfResourcesForAnnotation = CandidateCountCache.get();
+            if(numberOfResourcesForAnnotation <= 0){
+                CandidateCountCache.invalidate();
+                return null;
+            }
         }
-        catch (IOException ex) {
-            LOGGER.log(Level.SEVERE, "{0}: " + ex.getMessage(), new Timestamp(System.currentTimeMillis()));
-            exchange.sendResponseHeaders(500, 0);
-            exchange.getResponseBody().close();
+        catch(Exception ex){
+            return null;
         }
-        return m;
+        int offset = Main.RNG.nextInt(Math.max(1, numberOfResourcesForAnnotation - limit + 1));
+        Query query = QUERY_FOR_NEW_ANNOTATION.bind(Map.of("current_annotator", NodeFactory.createURI("mailto:" + email)),
+                                                    offset, limit);
+        LOGGER.log(Level.INFO, "{0}: Querying SPARQL endpoint for user: " + email,
+                   new Timestamp(System.currentTimeMillis()));
+        return SparqlClient.execute(query, QueryExecution::execConstruct);
+    }
+    
+    /**
+     * Retrieves triples of given resources in a single query.
+     * 
+     * @param iris
+     * @return 
+     */
+    public static Model retrieveResources(Collection<String> iris){
+        List<Node> resources = new ArrayList<>(iris.size());
+        iris.forEach((String iri) -> resources.add(NodeFactory.createURI(iri)));
+        LOGGER.log(Level.INFO, "{0}: Querying SPARQL endpoint for " + iris.size() + " resources.",
+                   new Timestamp(System.currentTimeMillis()));
+        return SparqlClient.execute(QUERY_FOR_RESOURCE_TRIPLES.bindValues("dbr", resources),
+                                    QueryExecution::execConstruct);
+    }
+    
+    /**
+     * Retrieves IRIs of all resources not yet annotated.
+     * 
+     * @return 
+     */
+    public static List<String> retrieveCandidateResources(){
+        List<String> iris = new ArrayList<>();
+        return SparqlClient.execute(QUERY_FOR_CANDIDATE_RESOURCES.bind(), -1, -1, (QueryExecution qe) -> {
+            qe.execSelect().forEachRemaining((QuerySolution qs) -> iris.add(qs.getResource("dbr").getURI()));
+            return iris;
+        });
+    }
+    
+    /**
+     * Creates update inserting annotations of resources by an annotator.
+     * 
+     * @param email e-mail address of the annotator
+     * @param subject2concept IRIs of the annotated resources and of the FRBR classes assigned to them
+     * @return 
+     */
+    public static UpdateRequest createAnnotationUpdate(String email, Map<String,String> subject2concept){
+        QuadDataAcc data = new QuadDataAcc();
+        Node mbox = NodeFactory.createURI("mailto:" + email);
+        subject2concept.forEach((String subject, String concept) -> {
+            Node s = NodeFactory.createURI(subject);
+            data.addTriple(Triple.create(s, RDF.Nodes.type, NodeFactory.createURI(concept)));
+            data.addTriple(Triple.create(s, ANNOTATED_BY, mbox));
+        });
+        return new UpdateRequest(new UpdateDataInsert(data));
+    }
+    
+    /**
+     * Split model into separate models each containing statements of a single subject.
+     * 
+     * @param m
+     * @return 
+     */
+    public static Collection<Model> splitBySubject(Model m){
+        Map<Resource,Model> subject2model = new LinkedHashMap<>();
+        m.listStatements().forEachRemaining((Statement statement) -> {
+            subject2model.computeIfAbsent(statement.getSubject(),
+                                          (Resource r) -> ModelFactory.createDefaultModel().setNsPrefixes(PM))
+                         .add(statement);
+        });
+        return subject2model.values();
+    }
+    
+    /**
+     * Queries SPARQL endpoint for the number of resources not yet annotated.
+     * 
+     * @return 
+     */
+    public static int getNumberOfResourcesNotYetAnnotated(){
+        LOGGER.log(Level.INFO, "{0}: Finding the number of resources not yet annotated.",
+                   new Timestamp(System.currentTimeMillis()));
+        return SparqlClient.execute(QUERY_FOR_NUMBER_OF_NOT_ANNOTATED_RESOURCES.bind(), RDFUtilitites::getCount);
     }
     
     /**
@@ -133,19 +189,60 @@ public class RDFUtilitites {
         return (prefix == null ? resource.getURI() : prefix + ":" + resource.getLocalName());
     }
     
-    public static int getNumberOfAnnotations(HttpExchange exchange, String session_id,String email){
-        try {
-            String currentAnnotator = "mailto:" + Main.ID2USER.get(session_id).email;
-            ParameterizedSparqlString pss = new ParameterizedSparqlString(queryForNumberOfAnnotationsOfCurrentAnnotator);
-            pss.setIri("current_annotator", new URL(currentAnnotator));
-            QueryExecution qe=QueryExecutionFactory.sparqlService(SPARQLendpoint, pss.asQuery());
-            ResultSet rs = qe.execSelect();
-            int numberOfAnnotations = rs.next().getLiteral("count").getInt();
-            qe.close();
-            return numberOfAnnotations;
-        } catch (MalformedURLException ex) {
-            Logger.getLogger(RDFUtilitites.class.getName()).log(Level.SEVERE, null, ex);
-        }
-        return -1;
+    /**
+     * Get the number of annotations of an annotator. Numbers of annotations
+     * of all annotators are loaded from SPARQL endpoint by a single query
+     * the first time any of them is not known.
+     * 
+     * @param user the annotator
+     * @return future completed with the number of annotations or -1 if the query failed
+     */
+    public static CompletableFuture<Integer> getNumberOfAnnotationsAsync(User user){
+        if(user.getNumberOfAnnotations() >= 0)
+            return CompletableFuture.completedFuture(user.getNumberOfAnnotations());
+        return loadNumberOfAnnotations().thenApply((Void v) -> user.getNumberOfAnnotations());
+    }
+    
+    /**
+     * Load numbers of annotations of all annotators unless they are already being loaded.
+     * 
+     * @return 
+     */
+    private static synchronized CompletableFuture<Void> loadNumberOfAnnotations(){
+        if(numberOfAnnotationsLoader != null && !numberOfAnnotationsLoader.isDone())
+            return numberOfAnnotationsLoader;
+        LOGGER.log(Level.INFO, "{0}: Loading the number of annotations of all annotators.",
+                   new Timestamp(System.currentTimeMillis()));
+        Query query = QUERY_FOR_NUMBER_OF_ANNOTATIONS_BY_ANNOTATOR.bind();
+        // Pending annotations are not sent while counting, so that each of them is counted
+        // either by the query or by the annotator, depending on whether it has been written.
+        numberOfAnnotationsLoader = SparqlClient.executeAsync(query,
+                (QueryExecution qe) -> AnnotationWriter.whileNotFlushing(() -> {
+            long written = AnnotationWriter.getDequeued();
+            qe.execSelect().forEachRemaining((QuerySolution qs) -> {
+                String annotator = qs.getResource("annotator").getURI();
+                User user = Main.SESSIONS.getUser(annotator.replaceFirst("^mailto:", ""));
+                if(user != null)
+                    user.setNumberOfAnnotations(qs.getLiteral("count").getInt(), written);
+            });
+            Main.SESSIONS.getUsers().forEach((User user) -> user.setNumberOfAnnotations(0, written));
+            return (Void)null;
+        })).exceptionally((Throwable ex) -> {
+            LOGGER.log(Level.SEVERE, "{0}: " + ex.getMessage(),
+                       new Timestamp(System.currentTimeMillis()));
+            return null;
+        });
+        return numberOfAnnotationsLoader;
+    }
+    
+    /**
+     * Read value of variable count from the first row of a SELECT query.
+     * 
+     * @param qe
+     * @return 
+     */
+    private static int getCount(QueryExecution qe){
+        ResultSet rs = qe.execSelect();
+        return rs.next().getLiteral("count").getInt();
     }
 }
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator.logic;
+
+import com.github.fuchsdavid.annotator.Main;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.json.JsonArrayBuilder;
+import javax.json.stream.JsonGenerator;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Statement;
+
+/**
+ * Immutable rendering-ready view of the triples of a single resource.
+ *
+ * Rows are sorted by predicate and kept in flat arrays of prefixed names
+ * and lexical forms, predicate names are shared by all snapshots.
+ *
+ * @author David Fuchs
+ */
+public final class ResourceSnapshot {
+    private static final Map<String,String> PREDICATES = new ConcurrentHashMap<>();
+
+    private final String subject;
+    private final String prefixedSubject;
+    private final String[] predicates;
+    private final String[] objects;
+
+    private ResourceSnapshot(String subject, String prefixedSubject, String[] predicates, String[] objects){
+        this.subject = subject;
+        this.prefixedSubject = prefixedSubject;
+        this.predicates = predicates;
+        this.objects = objects;
+    }
+
+    /**
+     * Create snapshot of a model containing statements of a single resource.
+     *
+     * @param m
+     * @return
+     */
+    public static ResourceSnapshot of(Model m){
+        List<Statement> statements = m.listStatements().toList();
+        statements.sort((Statement o1, Statement o2) -> {
+            return o1.getPredicate().getURI().compareTo(o2.getPredicate().getURI());
+        });
+        String[] predicates = new String[statements.size()];
+        String[] objects = new String[statements.size()];
+        for(int i = 0; i < predicates.length; i++){
+            Statement statement = statements.get(i);
+            predicates[i] = PREDICATES.computeIfAbsent(statement.getPredicate().getURI(),
+                    (String uri) -> RDFUtilitites.getPrefixedName(statement.getPredicate()));
+            if(statement.getObject().isResource())
+                objects[i] = RDFUtilitites.getPrefixedName(statement.getObject().asResource());
+            else
+                objects[i] = statement.getObject().asLiteral().getLexicalForm();
+        }
+        if(statements.isEmpty())
+            return new ResourceSnapshot(null, null, predicates, objects);
+        return new ResourceSnapshot(statements.get(0).getSubject().getURI(),
+                                    RDFUtilitites.getPrefixedName(statements.get(0).getSubject()),
+                                    predicates, objects);
+    }
+
+    /**
+     * Get IRI of the resource.
+     *
+     * @return IRI or null if the snapshot is empty
+     */
+    public String getSubject(){
+        return subject;
+    }
+
+    /**
+     * Get prefixed name of the resource.
+     *
+     * @return prefixed name or null if the snapshot is empty
+     */
+    public String getPrefixedSubject(){
+        return prefixedSubject;
+    }
+
+    /**
+     * Get number of rows.
+     *
+     * @return
+     */
+    public int size(){
+        return predicates.length;
+    }
+
+    /**
+     * Get prefixed name of the predicate in given row.
+     *
+     * @param row
+     * @return
+     */
+    public String getPredicate(int row){
+        return predicates[row];
+    }
+
+    /**
+     * Get prefixed name or lexical form of the object in given row.
+     *
+     * @param row
+     * @return
+     */
+    public String getObject(int row){
+        return objects[row];
+    }
+
+    /**
+     * Write rows as JSON objects into an array opened by the generator.
+     *
+     * @param generator
+     */
+    public void writeTriples(JsonGenerator generator){
+        for(int i = 0; i < predicates.length; i++){
+            generator.writeStartObject()
+                     .write("subject", prefixedSubject)
+                     .write("predicate", predicates[i])
+                     .write("object", objects[i])
+                     .writeEnd();
+        }
+    }
+
+    /**
+     * Serialize rows as a JSON array of triples encoded in UTF-8.
+     *
+     * @return
+     */
+    public byte[] getTriplesJson(){
+        JsonArrayBuilder array = Main.JF.createArrayBuilder();
+        for(int i = 0; i < predicates.length; i++){
+            array.add(Main.JF.createObjectBuilder()
+                             .add("subject", prefixedSubject)
+                             .add("predicate", predicates[i])
+                             .add("object", objects[i]).build());
+        }
+        return array.build().toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator.logic;
+
+/**
+ * Thrown when the SPARQL endpoint is considered unavailable and requests
+ * should be rejected instead of waiting for it.
+ *
+ * @author David Fuchs
+ */
+public class ServiceUnavailableException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    private final long retryAfter;
+
+    /**
+     * Create exception.
+     *
+     * @param message
+     * @param retryAfter time in milliseconds after which the client may try again
+     */
+    public ServiceUnavailableException(String message, long retryAfter){
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Get time after which the client may try again.
+     *
+     * @return time in milliseconds
+     */
+    public long getRetryAfter(){
+        return retryAfter;
+    }
+}
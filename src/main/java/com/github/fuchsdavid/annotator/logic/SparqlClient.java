@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator.logic;
+
+import com.github.fuchsdavid.annotator.ExecutorMode;
+import com.github.fuchsdavid.annotator.Main;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.jena.atlas.web.HttpException;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryCancelledException;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.sparql.engine.http.QueryEngineHTTP;
+import org.apache.jena.sparql.engine.http.QueryExceptionHTTP;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.TDB2Factory;
+import org.apache.jena.update.UpdateExecutionFactory;
+import org.apache.jena.update.UpdateRequest;
+
+/**
+ * Client of the SPARQL endpoint sharing a pool of HTTP connections
+ * among all queries, which can also be executed asynchronously.
+ * If a TDB2 dataset is configured, queries and updates are executed
+ * in-process against it within read and write transactions instead.
+ * Calls to the SPARQL endpoint are retried and guarded by a circuit breaker,
+ * so that an overloaded endpoint is not flooded with further requests.
+ * 
+ * @author David Fuchs
+ */
+public class SparqlClient {
+    private static final Logger LOGGER = Logger.getLogger(SparqlClient.class.getName());
+    // Binary RDF is preferred, endpoints which do not support it answer with one of the text syntaxes.
+    private static final String BINARY_RDF_ACCEPT = WebContent.contentTypeRDFThrift + ", "
+                                                    + WebContent.contentTypeNTriples + ";q=0.9, "
+                                                    + WebContent.contentTypeTurtle + ";q=0.8, "
+                                                    + WebContent.contentTypeRDFXML + ";q=0.5";
+    private static HttpClient client;
+    private static Dataset dataset;
+    private static ExecutorService executor;
+    private static CircuitBreaker breaker;
+    
+    private SparqlClient(){}
+    
+    /**
+     * Execute query using the configured timeouts.
+     * 
+     * @param <T>
+     * @param query
+     * @param handler function extracting result from the query execution
+     * @return 
+     */
+    public static <T> T execute(Query query, Function<QueryExecution,T> handler){
+        return execute(query, Main.queryTimeout, Main.queryTotalTimeout, handler);
+    }
+    
+    /**
+     * Execute query.
+     * 
+     * @param <T>
+     * @param query
+     * @param timeout time in milliseconds to wait for the first result or a negative number to wait indefinitely
+     * @param totalTimeout time in milliseconds to wait for all results or a negative number to wait indefinitely
+     * @param handler function extracting result from the query execution
+     * @return 
+     */
+    public static <T> T execute(Query query, long timeout, long totalTimeout, Function<QueryExecution,T> handler){
+        if(Main.tdb2 != null){
+            Dataset ds = getDataset();
+            return Txn.calculateRead(ds, () -> {
+                try (QueryExecution qe = QueryExecutionFactory.create(query, ds)) {
+                    qe.setTimeout(timeout, TimeUnit.MILLISECONDS, totalTimeout, TimeUnit.MILLISECONDS);
+                    return handler.apply(qe);
+                }
+            });
+        }
+        return getBreaker().call(() -> {
+            try (QueryExecution qe = QueryExecutionFactory.sparqlService(Main.SPARQLendpoint, query, getClient())) {
+                if(Main.binaryRDF && (query.isConstructType() || query.isDescribeType()) && qe instanceof QueryEngineHTTP)
+                    ((QueryEngineHTTP)qe).setAcceptHeader(BINARY_RDF_ACCEPT);
+                qe.setTimeout(timeout, TimeUnit.MILLISECONDS, totalTimeout, TimeUnit.MILLISECONDS);
+                return handler.apply(qe);
+            }
+        }, Main.retryAttempts, Main.retryBackoff);
+    }
+    
+    /**
+     * Execute query asynchronously using the configured timeouts.
+     * 
+     * @param <T>
+     * @param query
+     * @param handler function extracting result from the query execution
+     * @return 
+     */
+    public static <T> CompletableFuture<T> executeAsync(Query query, Function<QueryExecution,T> handler){
+        return CompletableFuture.supplyAsync(() -> execute(query, handler), getExecutor());
+    }
+    
+    /**
+     * Execute update. Updates are not retried, since they might have been
+     * applied even though the request failed.
+     * 
+     * @param update 
+     */
+    public static void update(UpdateRequest update){
+        if(Main.tdb2 != null){
+            Dataset ds = getDataset();
+            Txn.executeWrite(ds, () -> UpdateExecutionFactory.create(update, ds).execute());
+            return;
+        }
+        getBreaker().call(() -> {
+            UpdateExecutionFactory.createRemote(update, Main.SPARQLendpoint, getClient()).execute();
+            return null;
+        }, 1, 0);
+    }
+    
+    /**
+     * Lazily create circuit breaker guarding the SPARQL endpoint.
+     * 
+     * @return 
+     */
+    private static synchronized CircuitBreaker getBreaker(){
+        if(breaker == null)
+            breaker = new CircuitBreaker("SPARQL endpoint", Main.breakerThreshold, Main.breakerOpenTime,
+                                         SparqlClient::isTransient);
+        return breaker;
+    }
+    
+    /**
+     * Check if an exception is a transient failure of the SPARQL endpoint: a timeout,
+     * a failed connection or an HTTP status indicating an overloaded or failing server.
+     * Errors caused by the request itself, such as malformed queries, are not transient.
+     * 
+     * @param ex
+     * @return 
+     */
+    static boolean isTransient(RuntimeException ex){
+        if(ex instanceof QueryCancelledException)
+            return true;
+        int status;
+        if(ex instanceof QueryExceptionHTTP)
+            status = ((QueryExceptionHTTP)ex).getStatusCode();
+        else if(ex instanceof HttpException)
+            status = ((HttpException)ex).getStatusCode();
+        else{
+            for(Throwable cause = ex.getCause(); cause != null; cause = cause.getCause())
+                if(cause instanceof IOException)
+                    return true;
+            return false;
+        }
+        return status < 0 || status >= 500 || status == 408 || status == 429;
+    }
+    
+    /**
+     * Lazily connect to the configured TDB2 dataset.
+     * 
+     * @return 
+     */
+    private static synchronized Dataset getDataset(){
+        if(dataset == null){
+            dataset = TDB2Factory.connectDataset(Main.tdb2.toString());
+            LOGGER.log(Level.INFO, "{0}: Opened TDB2 dataset " + Main.tdb2 + ".",
+                       new Timestamp(System.currentTimeMillis()));
+        }
+        return dataset;
+    }
+    
+    /**
+     * Lazily create HTTP client with a pool of connections.
+     * 
+     * @return 
+     */
+    private static synchronized HttpClient getClient(){
+        if(client == null){
+            PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+            connectionManager.setMaxTotal(Main.maxConnections);
+            connectionManager.setDefaultMaxPerRoute(Main.maxConnections);
+            RequestConfig config = RequestConfig.custom()
+                                                .setConnectTimeout((int)Main.queryTimeout)
+                                                .setConnectionRequestTimeout((int)Main.queryTimeout)
+                                                .build();
+            client = HttpClients.custom()
+                                .setConnectionManager(connectionManager)
+                                .setDefaultRequestConfig(config)
+                                .build();
+        }
+        return client;
+    }
+    
+    /**
+     * Lazily create executor running asynchronous queries.
+     * 
+     * @return 
+     */
+    private static synchronized ExecutorService getExecutor(){
+        if(executor == null)
+            executor = Executors.newFixedThreadPool(Main.maxConnections,
+                                                    ExecutorMode.namedThreadFactory("sparql-", true));
+        return executor;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator.logic;
+
+import com.github.fuchsdavid.annotator.Main;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * In-memory cache of static assets bundled with the application. Each asset
+ * is read from the class path and compressed once, the first time it is requested.
+ * Only existing assets are cached, so that the cache is bounded by the bundled assets.
+ *
+ * @author David Fuchs
+ */
+public class StaticAssets {
+    private static final Logger LOGGER = Logger.getLogger(StaticAssets.class.getName());
+    private static final Map<String,StaticResource> CACHE = new ConcurrentHashMap<>();
+
+    private StaticAssets(){}
+
+    /**
+     * Get content type of an asset derived from its extension.
+     *
+     * @param path
+     * @return content type or null if assets of this type are not served
+     */
+    public static String contentType(String path){
+        String[] ext = path.split("\\.");
+        switch(ext[ext.length-1]){
+            case "css":   return "text/css";
+            case "js":    return "text/javascript+module";
+            case "xhtml": return "application/xhtml+xml";
+            case "gif":   return "image/gif";
+            default:      return null;
+        }
+    }
+
+    /**
+     * Get asset with given class path.
+     *
+     * @param path
+     * @return asset or null if there is no such asset
+     * @throws IOException
+     */
+    public static StaticResource get(String path) throws IOException{
+        StaticResource cached = CACHE.get(path);
+        if(cached != null)
+            return cached;
+        StaticResource loaded = load(path);
+        if(loaded == null)
+            return null;
+        cached = CACHE.putIfAbsent(path, loaded);
+        return (cached != null ? cached : loaded);
+    }
+
+    /**
+     * Read asset from the class path.
+     *
+     * @param path
+     * @return asset or null if there is no such asset
+     * @throws IOException
+     */
+    private static StaticResource load(String path) throws IOException{
+        try(InputStream is = Main.class.getResourceAsStream(path)){
+            if(is == null) return null;
+            StaticResource resource = StaticResource.of(is.readAllBytes(), contentType(path),
+                                                        StaticResource.lastModified(path),
+                                                        "public, max-age=" + Main.staticMaxAge);
+            LOGGER.log(Level.INFO, "{0}: Cached static asset " + path + ".",
+                       new Timestamp(System.currentTimeMillis()));
+            return resource;
+        }
+    }
+}
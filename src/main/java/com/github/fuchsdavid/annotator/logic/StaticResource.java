@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator.logic;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content which never changes once loaded, kept in memory together with its
+ * gzip-compressed variant and served with support for conditional requests.
+ *
+ * @author David Fuchs
+ */
+public final class StaticResource {
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME;
+
+    private final String contentType;
+    private final byte[] content;
+    private final byte[] gzipped;
+    private final String etag;
+    private final long lastModified;
+    private final String cacheControl;
+
+    private StaticResource(String contentType, byte[] content, byte[] gzipped, String etag,
+                           long lastModified, String cacheControl){
+        this.contentType = contentType;
+        this.content = content;
+        this.gzipped = gzipped;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.cacheControl = cacheControl;
+    }
+
+    /**
+     * Create resource and precompute its compressed variant and entity tag.
+     *
+     * @param content
+     * @param contentType
+     * @param lastModified time of the last modification in milliseconds
+     * @param cacheControl value of the Cache-Control header
+     * @return
+     * @throws IOException
+     */
+    public static StaticResource of(byte[] content, String contentType, long lastModified, String cacheControl)
+            throws IOException{
+        ByteArrayOutputStream os = new ByteArrayOutputStream(content.length / 2 + 32);
+        try(GZIPOutputStream gzip = new GZIPOutputStream(os)){
+            gzip.write(content);
+        }
+        byte[] gzipped = (os.size() < content.length ? os.toByteArray() : null);
+        try{
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            String etag = Base64.getUrlEncoder().withoutPadding().encodeToString(digest).substring(0, 22);
+            return new StaticResource(contentType, content, gzipped, etag, lastModified / 1000 * 1000, cacheControl);
+        }
+        catch(NoSuchAlgorithmException ex){
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Get time of the last modification of a class path resource.
+     *
+     * @param resource
+     * @return time in milliseconds, current time if it is not known
+     */
+    public static long lastModified(String resource){
+        try{
+            long lastModified = StaticResource.class.getResource(resource).openConnection().getLastModified();
+            return (lastModified > 0 ? lastModified : System.currentTimeMillis());
+        }
+        catch(IOException | NullPointerException ex){
+            return System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Get length of the uncompressed content.
+     *
+     * @return
+     */
+    public int length(){
+        return content.length;
+    }
+
+    /**
+     * Send the resource in response to a GET request. Responds with 304 if the
+     * client already has the current version, sends a single byte range of
+     * the uncompressed content if requested, otherwise sends the compressed
+     * variant if the client accepts it.
+     *
+     * @param exchange
+     * @throws IOException
+     */
+    public void send(HttpExchange exchange) throws IOException{
+        Headers request = exchange.getRequestHeaders();
+        Headers response = exchange.getResponseHeaders();
+        String range = requestedRange(request, "\"" + etag + "\"");
+        boolean gzip = range == null && gzipped != null && accepts(request.getFirst("Accept-Encoding"), "gzip");
+        response.set("ETag", "\"" + etag + (gzip ? "-gz\"" : "\""));
+        response.set("Last-Modified", httpDate(lastModified));
+        response.set("Vary", "Accept-Encoding");
+        response.set("Accept-Ranges", "bytes");
+        if(cacheControl != null)
+            response.set("Cache-Control", cacheControl);
+        if(notModified(request, lastModified, "\"" + etag + "\"", "\"" + etag + "-gz\"")){
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        response.set("Content-Type", contentType);
+        int from = 0, to = content.length;
+        byte[] body = content;
+        int status = 200;
+        if(range != null){
+            int[] bounds = parseRange(range, content.length);
+            if(bounds == null){
+                response.set("Content-Range", "bytes */" + content.length);
+                exchange.sendResponseHeaders(416, -1);
+                exchange.close();
+                return;
+            }
+            from = bounds[0];
+            to = bounds[1];
+            status = 206;
+            response.set("Content-Range", "bytes " + from + "-" + (to - 1) + "/" + content.length);
+        }
+        else if(gzip){
+            response.set("Content-Encoding", "gzip");
+            body = gzipped;
+            to = gzipped.length;
+        }
+        if(exchange.getRequestMethod().equals("HEAD")){
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        exchange.sendResponseHeaders(status, to - from);
+        exchange.getResponseBody().write(body, from, to - from);
+        exchange.getResponseBody().close();
+    }
+
+    /**
+     * Get Range header of a request if it asks for a single byte range of the current version.
+     * Multiple ranges and ranges of an outdated version are answered with the whole content.
+     *
+     * @param request
+     * @param etag entity tag of the current version
+     * @return range or null if the whole content is to be sent
+     */
+    static String requestedRange(Headers request, String etag){
+        String range = request.getFirst("Range");
+        if(range == null || !range.startsWith("bytes=") || range.contains(","))
+            return null;
+        String ifRange = request.getFirst("If-Range");
+        return (ifRange == null || ifRange.equals(etag) ? range : null);
+    }
+
+    /**
+     * Parse a Range header consisting of a single byte range.
+     *
+     * @param range
+     * @param length length of the content
+     * @return start and exclusive end of the range or null if it is not satisfiable
+     */
+    static int[] parseRange(String range, int length){
+        String[] bounds = range.substring(6).trim().split("-", -1);
+        if(bounds.length != 2)
+            return null;
+        try{
+            long from, to;
+            if(bounds[0].isEmpty()){
+                from = length - Long.parseLong(bounds[1]);
+                to = length;
+            }
+            else{
+                from = Long.parseLong(bounds[0]);
+                to = (bounds[1].isEmpty() ? length : Math.min(length, Long.parseLong(bounds[1]) + 1));
+            }
+            from = Math.max(0, from);
+            return (from < to ? new int[]{(int)from, (int)to} : null);
+        }
+        catch(NumberFormatException ex){
+            return null;
+        }
+    }
+
+    /**
+     * Format time as an HTTP date.
+     *
+     * @param time time in milliseconds
+     * @return
+     */
+    static String httpDate(long time){
+        return HTTP_DATE.format(ZonedDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneOffset.UTC));
+    }
+
+    /**
+     * Check conditional request headers against the current version.
+     *
+     * @param request
+     * @param lastModified time of the last modification of the current version
+     * @param etags entity tags of the current version
+     * @return true if the client already has the current version
+     */
+    static boolean notModified(Headers request, long lastModified, String... etags){
+        String ifNoneMatch = request.getFirst("If-None-Match");
+        if(ifNoneMatch != null){
+            for(String tag : ifNoneMatch.split(",")){
+                tag = tag.trim();
+                if(tag.startsWith("W/")) tag = tag.substring(2);
+                if(tag.equals("*") || Arrays.asList(etags).contains(tag))
+                    return true;
+            }
+            return false;
+        }
+        String ifModifiedSince = request.getFirst("If-Modified-Since");
+        if(ifModifiedSince != null){
+            try{
+                return ZonedDateTime.parse(ifModifiedSince, HTTP_DATE).toInstant().toEpochMilli() >= lastModified;
+            }
+            catch(DateTimeParseException ex){
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if an Accept-Encoding header allows given coding.
+     *
+     * @param acceptEncoding
+     * @param coding
+     * @return
+     */
+    private static boolean accepts(String acceptEncoding, String coding){
+        if(acceptEncoding == null) return false;
+        for(String part : acceptEncoding.split(",")){
+            String[] params = part.trim().split(";");
+            if(!params[0].trim().equalsIgnoreCase(coding)) continue;
+            for(int i = 1; i < params.length; i++)
+                if(params[i].trim().replace(" ", "").matches("q=0(\\.0*)?"))
+                    return false;
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator.logic;
+
+import com.github.fuchsdavid.annotator.Main;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
+
+/**
+ * Cache of triples retrieved from the SPARQL endpoint keyed by subject IRI.
+ * The in-memory tier holds at most a configured number of triples and evicts
+ * the least recently used resources; the optional on-disk tier stores every
+ * resource in RDF Thrift, so that it survives restarts of the server.
+ * 
+ * @author David Fuchs
+ */
+public class TripleCache {
+    private static final Logger LOGGER = Logger.getLogger(TripleCache.class.getName());
+    private static final Map<String,Model> IRI2MODEL = new LinkedHashMap<>(16, 0.75f, true);
+    
+    private static long cachedTriples = 0;
+    
+    private TripleCache(){}
+    
+    /**
+     * Get triples of given resources, retrieving only those not cached
+     * from the SPARQL endpoint. Resources rejected by {@link CandidateFilter}
+     * are neither cached nor returned.
+     * 
+     * @param iris
+     * @return models each containing statements of a single resource
+     */
+    public static Collection<Model> retrieve(Collection<String> iris){
+        List<Model> models = new ArrayList<>(iris.size());
+        List<String> missing = new ArrayList<>();
+        for(String iri : iris){
+            if(CandidateFilter.isRejected(iri)) continue;
+            Model m = get(iri);
+            if(m == null)
+                missing.add(iri);
+            else if(CandidateFilter.accept(m))
+                models.add(m);
+            else
+                CandidateFilter.reject(iri);
+        }
+        LOGGER.log(Level.INFO, "{0}: Found " + models.size() + " of " + iris.size() + " resources in cache.",
+                   new Timestamp(System.currentTimeMillis()));
+        if(!missing.isEmpty()){
+            Collection<Model> retrieved = CandidateFilter.validate(missing,
+                    RDFUtilitites.splitBySubject(RDFUtilitites.retrieveResources(missing)));
+            putAll(retrieved);
+            models.addAll(retrieved);
+        }
+        return models;
+    }
+    
+    /**
+     * Get cached triples of a resource.
+     * 
+     * @param iri
+     * @return model or null if the resource is not cached
+     */
+    public static Model get(String iri){
+        synchronized(IRI2MODEL){
+            Model m = IRI2MODEL.get(iri);
+            if(m != null) return m;
+        }
+        Model m = readFromDisk(iri);
+        if(m != null)
+            putInMemory(iri, m);
+        return m;
+    }
+    
+    /**
+     * Cache models each containing statements of a single resource.
+     * 
+     * @param models 
+     */
+    public static void putAll(Collection<Model> models){
+        models.forEach((Model m) -> {
+            String iri = m.listSubjects().next().getURI();
+            putInMemory(iri, m);
+            writeToDisk(iri, m);
+        });
+    }
+    
+    /**
+     * Put model into the in-memory tier, evicting least recently used models
+     * if the number of cached triples exceeds the limit.
+     * 
+     * @param iri
+     * @param m 
+     */
+    private static void putInMemory(String iri, Model m){
+        synchronized(IRI2MODEL){
+            Model previous = IRI2MODEL.put(iri, m);
+            if(previous != null)
+                cachedTriples -= previous.size();
+            cachedTriples += m.size();
+            Iterator<Model> it = IRI2MODEL.values().iterator();
+            while(cachedTriples > Main.tripleCacheSize && it.hasNext()){
+                cachedTriples -= it.next().size();
+                it.remove();
+            }
+        }
+    }
+    
+    /**
+     * Read model from the on-disk tier.
+     * 
+     * @param iri
+     * @return model or null if the on-disk tier is disabled or does not contain the resource
+     */
+    private static Model readFromDisk(String iri){
+        if(Main.tripleCacheDir == null) return null;
+        Path file = Main.tripleCacheDir.resolve(fileName(iri));
+        if(!Files.isRegularFile(file)) return null;
+        try (InputStream is = Files.newInputStream(file)) {
+            Model m = ModelFactory.createDefaultModel().setNsPrefixes(RDFUtilitites.PM);
+            RDFDataMgr.read(m, is, Lang.RDFTHRIFT);
+            return m.isEmpty() ? null : m;
+        }
+        catch(Exception ex){
+            LOGGER.log(Level.WARNING, "{0}: Failed to read cached resource " + iri + ": " + ex.getMessage(),
+                       new Timestamp(System.currentTimeMillis()));
+            return null;
+        }
+    }
+    
+    /**
+     * Write model to the on-disk tier.
+     * 
+     * @param iri
+     * @param m 
+     */
+    private static void writeToDisk(String iri, Model m){
+        if(Main.tripleCacheDir == null) return;
+        try {
+            Files.createDirectories(Main.tripleCacheDir);
+            Path file = Main.tripleCacheDir.resolve(fileName(iri));
+            Path tmp = Files.createTempFile(Main.tripleCacheDir, null, ".tmp");
+            try (OutputStream os = Files.newOutputStream(tmp)) {
+                RDFDataMgr.write(os, m, RDFFormat.RDF_THRIFT);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(IOException ex){
+            LOGGER.log(Level.WARNING, "{0}: Failed to write cached resource " + iri + ": " + ex.getMessage(),
+                       new Timestamp(System.currentTimeMillis()));
+        }
+    }
+    
+    /**
+     * Derive name of the file holding a resource from its IRI.
+     * 
+     * @param iri
+     * @return 
+     */
+    private static String fileName(String iri){
+        try {
+            StringBuilder sb = new StringBuilder();
+            for(byte b : MessageDigest.getInstance("SHA-256").digest(iri.getBytes(StandardCharsets.UTF_8)))
+                sb.append(String.format("%02x", b));
+            return sb.append(".trdf").toString();
+        }
+        catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator.logic;
+
+import com.github.fuchsdavid.annotator.Main;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Serves static files from an external directory, which overrides the assets
+ * bundled with the application. File contents are transferred straight from
+ * the file channel, only metadata of existing files is cached. The cache
+ * is refreshed by watching the directory for changes.
+ *
+ * @author David Fuchs
+ */
+public class WebRoot {
+    private static final Logger LOGGER = Logger.getLogger(WebRoot.class.getName());
+    private static final Map<Path,FileInfo> METADATA = new ConcurrentHashMap<>();
+
+    private static Path root;
+    private static WatchService watcher;
+    private static volatile boolean watching = false;
+
+    private WebRoot(){}
+
+    /**
+     * Start serving files from the configured directory and watching it for changes.
+     *
+     * @throws IOException
+     */
+    public static synchronized void start() throws IOException{
+        if(Main.webRoot == null || watcher != null) return;
+        root = Main.webRoot.toAbsolutePath().normalize();
+        watcher = root.getFileSystem().newWatchService();
+        register(root);
+        watching = true;
+        Thread t = new Thread(WebRoot::watch, "web-root-watcher");
+        t.setDaemon(true);
+        t.start();
+        LOGGER.log(Level.INFO, "{0}: Serving static files from " + root + ".",
+                   new Timestamp(System.currentTimeMillis()));
+    }
+
+    /**
+     * Send file corresponding to a path of a bundled asset, if the directory contains it.
+     *
+     * @param exchange
+     * @param path class path of the bundled asset, starting with /www/
+     * @return false if the directory does not contain such a file
+     * @throws IOException
+     */
+    public static boolean send(HttpExchange exchange, String path) throws IOException{
+        if(root == null) return false;
+        Path file = root.resolve(path.substring("/www/".length())).normalize();
+        if(!file.startsWith(root)) return false;
+        // Missing files are not cached, so that requests cannot grow the cache without bound.
+        FileInfo info = (watching ? METADATA.get(file) : null);
+        if(info == null){
+            info = stat(file);
+            if(info == null) return false;
+            if(watching) METADATA.put(file, info);
+        }
+        Headers request = exchange.getRequestHeaders();
+        Headers response = exchange.getResponseHeaders();
+        response.set("ETag", info.etag);
+        response.set("Last-Modified", StaticResource.httpDate(info.lastModified));
+        response.set("Accept-Ranges", "bytes");
+        response.set("Cache-Control", "public, max-age=" + Main.staticMaxAge);
+        if(StaticResource.notModified(request, info.lastModified, info.etag)){
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return true;
+        }
+        response.set("Content-Type", StaticAssets.contentType(path));
+        String range = StaticResource.requestedRange(request, info.etag);
+        long from = 0, to = info.size;
+        int status = 200;
+        if(range != null){
+            int[] bounds = (info.size <= Integer.MAX_VALUE ? StaticResource.parseRange(range, (int)info.size) : null);
+            if(bounds == null){
+                response.set("Content-Range", "bytes */" + info.size);
+                exchange.sendResponseHeaders(416, -1);
+                exchange.close();
+                return true;
+            }
+            from = bounds[0];
+            to = bounds[1];
+            status = 206;
+            response.set("Content-Range", "bytes " + from + "-" + (to - 1) + "/" + info.size);
+        }
+        if(exchange.getRequestMethod().equals("HEAD")){
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return true;
+        }
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            exchange.sendResponseHeaders(status, to - from);
+            try(OutputStream os = exchange.getResponseBody()){
+                WritableByteChannel out = Channels.newChannel(os);
+                for(long position = from; position < to; ){
+                    long transferred = channel.transferTo(position, to - position, out);
+                    if(transferred <= 0){
+                        // Shrunk since its metadata has been read, the response cannot be completed.
+                        METADATA.remove(file);
+                        LOGGER.log(Level.WARNING, "{0}: File " + file + " has changed while being sent.",
+                                   new Timestamp(System.currentTimeMillis()));
+                        throw new IOException("Unexpected end of file " + file + ".");
+                    }
+                    position += transferred;
+                }
+            }
+        }
+        catch(NoSuchFileException ex){
+            // Deleted since its metadata has been cached.
+            METADATA.remove(file);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Read metadata of a file.
+     *
+     * @param file
+     * @return metadata or null if the file does not exist or is not a regular file
+     */
+    private static FileInfo stat(Path file){
+        try{
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if(!attributes.isRegularFile()) return null;
+            return new FileInfo(attributes.size(), attributes.lastModifiedTime().toMillis());
+        }
+        catch(IOException ex){
+            return null;
+        }
+    }
+
+    /**
+     * Watch directory and all its subdirectories for changes.
+     *
+     * @param dir
+     * @throws IOException
+     */
+    private static void register(Path dir) throws IOException{
+        try(Stream<Path> dirs = Files.walk(dir)){
+            for(Path d : (Iterable<Path>)dirs.filter(Files::isDirectory)::iterator)
+                d.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                                    StandardWatchEventKinds.ENTRY_MODIFY,
+                                    StandardWatchEventKinds.ENTRY_DELETE);
+        }
+    }
+
+    /**
+     * Drop cached metadata of changed files until the watch service is closed.
+     */
+    private static void watch(){
+        try{
+            while(true){
+                WatchKey key = watcher.take();
+                Path dir = (Path)key.watchable();
+                for(WatchEvent<?> event : key.pollEvents()){
+                    if(event.kind() == StandardWatchEventKinds.OVERFLOW){
+                        METADATA.clear();
+                        continue;
+                    }
+                    Path changed = dir.resolve((Path)event.context());
+                    // Metadata of files within a changed directory are dropped as well.
+                    METADATA.keySet().removeIf((Path p) -> p.startsWith(changed));
+                    if(event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changed))
+                        register(changed);
+                }
+                key.reset();
+            }
+        }
+        catch(InterruptedException | ClosedWatchServiceException ex){
+            Thread.currentThread().interrupt();
+        }
+        catch(IOException ex){
+            LOGGER.log(Level.SEVERE, "{0}: Stopped watching " + root + ": " + ex.getMessage(),
+                       new Timestamp(System.currentTimeMillis()));
+            watching = false;
+            METADATA.clear();
+        }
+    }
+
+    /**
+     * Cached metadata of a file.
+     */
+    private static class FileInfo {
+        private final long size;
+        private final long lastModified;
+        private final String etag;
+
+        private FileInfo(long size, long lastModified){
+            this.size = size;
+            this.lastModified = lastModified / 1000 * 1000;
+            this.etag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(size) + "\"";
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author David Fuchs
+ */
+public class TestHistory {
+    
+    @Test
+    public void shouldNavigateWithinBounds(){
+        History<String> history = new History<>(4);
+        history.append("a", "A");
+        history.append("b", "B");
+        assertEquals(1, history.cursor());
+        assertTrue(history.atEnd());
+        assertEquals("a", history.backward());
+        assertEquals("a", history.backward());
+        assertEquals(0, history.cursor());
+        assertEquals("b", history.forward());
+        assertEquals("b", history.forward());
+        assertEquals(1, history.cursor());
+    }
+    
+    @Test
+    public void shouldKeepAbsoluteOrdersAfterEviction(){
+        History<String> history = new History<>(2);
+        for(String s : new String[]{"a", "b", "c", "d", "e"})
+            history.append(s, s.toUpperCase());
+        assertEquals(5, history.size());
+        assertNull(history.get(2));
+        assertEquals("d", history.get(3));
+        assertEquals("e", history.get(4));
+        assertEquals("A", history.getSubject(0));
+        assertEquals("d", history.backward());
+        assertNull(history.backward());
+        assertEquals(2, history.cursor());
+    }
+    
+    @Test
+    public void shouldNotEvictEntryAtCursor(){
+        History<String> history = new History<>(4);
+        history.append("a", "A");
+        history.append("b", "B");
+        assertEquals("a", history.evictOldest());
+        assertNull(history.evictOldest());
+        assertEquals("b", history.removeLast());
+        assertEquals(1, history.size());
+        assertNull(history.getSubject(1));
+        assertEquals("A", history.getSubject(0));
+    }
+}
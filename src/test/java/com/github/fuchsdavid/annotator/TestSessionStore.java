@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator;
+
+import com.github.fuchsdavid.annotator.logic.ResourceSnapshot;
+import java.util.concurrent.TimeUnit;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author David Fuchs
+ */
+public class TestSessionStore {
+    private static final String NS = "http://dbpedia.org/resource/TestSessionStore_";
+    private static final long SESSION_TRIPLES = Main.sessionTriples;
+    
+    private static ResourceSnapshot snapshot(String name){
+        Model m = ModelFactory.createDefaultModel();
+        Resource r = m.createResource(NS + name);
+        r.addProperty(RDF.type, RDFS.Resource);
+        r.addProperty(RDFS.label, name);
+        return ResourceSnapshot.of(m);
+    }
+    
+    @AfterEach
+    public void restoreBudget(){
+        Main.sessionTriples = SESSION_TRIPLES;
+    }
+    
+    @Test
+    public void shouldExpireIdleSessions(){
+        SessionStore store = new SessionStore();
+        long timeout = TimeUnit.SECONDS.toMillis(Main.sessionTimeout);
+        store.getOrCreate("idle").touch(1000);
+        Session active = store.getOrCreate("active");
+        active.append(snapshot("Active"));
+        active.touch(1000 + timeout);
+        store.getOrCreate("idle").append(snapshot("Idle"));
+        store.getOrCreate("idle").touch(1000);
+        store.expireIdle(1001 + timeout);
+        assertNull(store.get("idle"));
+        assertSame(active, store.get("active"));
+        assertEquals(2, store.getRetainedTriples());
+    }
+    
+    @Test
+    public void shouldEvictOldestSnapshotsButNotCurrentOne(){
+        Main.sessionTriples = 3;
+        SessionStore store = new SessionStore();
+        Session session = store.getOrCreate("session");
+        session.append(snapshot("A"));
+        assertEquals(2, store.getRetainedTriples());
+        ResourceSnapshot b = session.append(snapshot("B"));
+        assertNull(session.get(0));
+        assertSame(b, session.get(1));
+        assertEquals(NS + "A", session.getSubject(0));
+        assertEquals(2, store.getRetainedTriples());
+        Main.sessionTriples = 1;
+        ResourceSnapshot c = session.append(snapshot("C"));
+        assertNull(session.get(1));
+        assertSame(c, session.current());
+        assertEquals(2, store.getRetainedTriples());
+        session.getTriplesJson(c);
+        assertEquals(4, store.getRetainedTriples());
+        store.remove("session");
+        assertEquals(0, store.getRetainedTriples());
+    }
+}
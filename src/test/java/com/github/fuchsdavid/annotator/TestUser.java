@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author David Fuchs
+ */
+public class TestUser {
+    @Test
+    public void shouldNotCountWrittenAnnotationsTwice(){
+        User user = new User("a@example.org", "salt", "hash", true);
+        user.addAnnotations(2, 0);
+        user.addAnnotations(3, 1);
+        user.addAnnotations(1, -1);
+        assertEquals(-1, user.getNumberOfAnnotations());
+        user.setNumberOfAnnotations(10, 1);
+        assertEquals(13, user.getNumberOfAnnotations());
+        user.addAnnotations(4, 2);
+        user.setNumberOfAnnotations(0, 3);
+        assertEquals(17, user.getNumberOfAnnotations());
+    }
+}
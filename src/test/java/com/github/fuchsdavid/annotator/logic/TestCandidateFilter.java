@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator.logic;
+
+import java.util.List;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author David Fuchs
+ */
+public class TestCandidateFilter {
+    private static final String NS = "http://dbpedia.org/resource/TestCandidateFilter_";
+    
+    private static Model resource(String name, int triples){
+        Model m = ModelFactory.createDefaultModel();
+        Resource r = m.createResource(NS + name);
+        r.addProperty(RDF.type, RDFS.Resource);
+        for(int i=1; i<triples; i++)
+            r.addProperty(RDFS.label, "label " + i);
+        return m;
+    }
+    
+    @Test
+    public void shouldRejectDegenerateAndMissingResources(){
+        Model full = resource("Full", 5);
+        List<Model> accepted = CandidateFilter.validate(List.of(NS + "Full", NS + "Single", NS + "Missing"),
+                                                        List.of(full, resource("Single", 1)));
+        assertEquals(List.of(full), accepted);
+        assertFalse(CandidateFilter.isRejected(NS + "Full"));
+        assertTrue(CandidateFilter.isRejected(NS + "Single"));
+        assertTrue(CandidateFilter.isRejected(NS + "Missing"));
+        assertFalse(CandidateFilter.reject(NS + "Missing"));
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator.logic;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author David Fuchs
+ */
+public class TestCandidateIndex {
+    private static final List<String> IRIS = List.of("http://dbpedia.org/resource/C",
+                                                     "http://dbpedia.org/resource/A",
+                                                     "http://dbpedia.org/resource/Č",
+                                                     "http://dbpedia.org/resource/B",
+                                                     "http://dbpedia.org/resource/A");
+    
+    @Test
+    public void shouldIgnoreDuplicateIRIs(){
+        CandidateIndex index = new CandidateIndex(IRIS);
+        assertEquals(4, index.size());
+        IRIS.forEach(iri -> assertTrue(index.contains(iri)));
+        assertFalse(index.contains("http://dbpedia.org/resource/D"));
+    }
+    
+    @Test
+    public void shouldSampleDistinctIRIs(){
+        CandidateIndex index = new CandidateIndex(IRIS);
+        List<String> sample = index.sample(10, new Random(42));
+        assertEquals(4, sample.size());
+        assertEquals(4, new HashSet<>(sample).size());
+    }
+    
+    @Test
+    public void shouldNotSampleRemovedIRIs(){
+        CandidateIndex index = new CandidateIndex(IRIS);
+        assertTrue(index.remove("http://dbpedia.org/resource/Č"));
+        assertFalse(index.remove("http://dbpedia.org/resource/Č"));
+        assertFalse(index.contains("http://dbpedia.org/resource/Č"));
+        assertEquals(3, index.size());
+        for(int seed=0; seed<10; seed++)
+            assertFalse(index.sample(3, new Random(seed)).contains("http://dbpedia.org/resource/Č"));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator.logic;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author David Fuchs
+ */
+public class TestCircuitBreaker {
+    private static final RuntimeException FAILURE = new IllegalStateException("failure");
+    private static final Predicate<RuntimeException> IS_FAILURE = (RuntimeException ex) -> ex == FAILURE;
+    
+    private static Integer fail(){
+        throw FAILURE;
+    }
+    
+    @Test
+    public void shouldRetryUntilSuccess(){
+        CircuitBreaker breaker = new CircuitBreaker("test", 5, 1000, IS_FAILURE);
+        AtomicInteger calls = new AtomicInteger();
+        assertEquals(3, breaker.call(() -> calls.incrementAndGet() < 3 ? fail() : calls.get(), 3, 1));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+    
+    @Test
+    public void shouldNeitherRetryNorCountOtherExceptions(){
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 60000, IS_FAILURE);
+        AtomicInteger calls = new AtomicInteger();
+        for(int i=0; i<3; i++)
+            assertThrows(NoSuchElementException.class, () -> breaker.call(() -> {
+                calls.incrementAndGet();
+                throw new NoSuchElementException();
+            }, 3, 1));
+        assertEquals(3, calls.get());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+    
+    @Test
+    public void shouldFailFastWhileOpen(){
+        CircuitBreaker breaker = new CircuitBreaker("test", 2, 60000, IS_FAILURE);
+        AtomicInteger calls = new AtomicInteger();
+        assertSame(FAILURE, assertThrows(RuntimeException.class,
+                                         () -> breaker.call(() -> calls.incrementAndGet() > 0 ? fail() : 0, 2, 1)));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        ServiceUnavailableException ex = assertThrows(ServiceUnavailableException.class,
+                                                      () -> breaker.call(calls::incrementAndGet, 1, 1));
+        assertTrue(ex.getRetryAfter() > 0);
+        assertEquals(2, calls.get());
+    }
+    
+    @Test
+    public void shouldAnswerWithUnknownCounterWhileOpen(){
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 60000, IS_FAILURE);
+        assertThrows(IllegalStateException.class, () -> breaker.call(TestCircuitBreaker::fail, 1, 1));
+        CompletableFuture<Integer> counter = CompletableFuture.supplyAsync(() -> breaker.call(() -> 7, 1, 1));
+        assertEquals(-1, Annotator.awaitNumberOfAnnotations(counter));
+        assertEquals(7, Annotator.awaitNumberOfAnnotations(CompletableFuture.completedFuture(7)));
+    }
+    
+    @Test
+    public void shouldCloseAfterSuccessfulProbe() throws InterruptedException{
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 50, IS_FAILURE);
+        assertThrows(IllegalStateException.class, () -> breaker.call(TestCircuitBreaker::fail, 1, 1));
+        Thread.sleep(100);
+        assertThrows(IllegalStateException.class, () -> breaker.call(TestCircuitBreaker::fail, 1, 1));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Thread.sleep(100);
+        assertEquals(7, breaker.call(() -> 7, 1, 1));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+}
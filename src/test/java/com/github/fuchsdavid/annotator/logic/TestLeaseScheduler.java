@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator.logic;
+
+import com.github.fuchsdavid.annotator.Main;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author David Fuchs
+ */
+public class TestLeaseScheduler {
+    private static final String NS = "http://dbpedia.org/resource/TestLeaseScheduler_";
+    
+    @AfterEach
+    public void restoreRedundancy(){
+        Main.redundancy = 1;
+    }
+    
+    @Test
+    public void shouldLeaseToConfiguredNumberOfAnnotators(){
+        Main.redundancy = 2;
+        String iri = NS + "Redundant";
+        assertTrue(LeaseScheduler.acquire(iri, "a@example.org"));
+        assertFalse(LeaseScheduler.acquire(iri, "a@example.org"));
+        assertTrue(LeaseScheduler.acquire(iri, "b@example.org"));
+        assertFalse(LeaseScheduler.isAvailable(iri, null));
+        assertFalse(LeaseScheduler.acquire(iri, "c@example.org"));
+        LeaseScheduler.release(iri, "b@example.org");
+        assertFalse(LeaseScheduler.complete(iri, "a@example.org"));
+        assertFalse(LeaseScheduler.acquire(iri, "a@example.org"));
+        assertTrue(LeaseScheduler.acquire(iri, "c@example.org"));
+        assertTrue(LeaseScheduler.complete(iri, "c@example.org"));
+        assertFalse(LeaseScheduler.isAvailable(iri, null));
+        assertFalse(LeaseScheduler.acquire(iri, "a@example.org"));
+        assertFalse(LeaseScheduler.acquire(iri, "d@example.org"));
+    }
+    
+    @Test
+    public void shouldForgetLeasesOfCompletedResources(){
+        String iri = NS + "Completed";
+        assertTrue(LeaseScheduler.acquire(iri, "a@example.org"));
+        assertTrue(LeaseScheduler.complete(iri, "a@example.org"));
+        LeaseScheduler.release(iri, "a@example.org");
+        assertTrue(LeaseScheduler.complete(iri, "b@example.org"));
+        assertFalse(LeaseScheduler.acquire(iri, "b@example.org"));
+        assertFalse(LeaseScheduler.isAvailable(iri, null));
+    }
+    
+    @Test
+    public void shouldReleaseExpiredLeases(){
+        String iri = NS + "Expiring";
+        long now = System.currentTimeMillis();
+        assertTrue(LeaseScheduler.acquire(iri, "a@example.org", now));
+        assertFalse(LeaseScheduler.acquire(iri, "b@example.org", now + 1));
+        assertTrue(LeaseScheduler.acquire(iri, "b@example.org", now + TimeUnit.SECONDS.toMillis(Main.leaseTime)));
+    }
+}
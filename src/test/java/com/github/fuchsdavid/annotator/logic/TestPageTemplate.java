@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator.logic;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author David Fuchs
+ */
+public class TestPageTemplate {
+    private static final String PAGE = "<p><b></b><i></i><b></b></p>";
+    
+    private static InputStream page(String source){
+        return new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static String render(PageTemplate template) throws IOException{
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        template.render(out, (int slot, OutputStream os) -> os.write(("[" + slot + "]").getBytes(StandardCharsets.UTF_8)));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+    
+    @Test
+    public void shouldPlaceSlotsBeforeMarkersInOrder() throws IOException{
+        PageTemplate template = PageTemplate.compile(page(PAGE), "</b>", "</i>", "</b>", "</p>");
+        assertEquals("<p><b>[0]</b><i>[1]</i><b>[2]</b>[3]</p>", render(template));
+    }
+    
+    @Test
+    public void shouldRenderPageWithoutMarkersUnchanged() throws IOException{
+        assertEquals(PAGE, render(PageTemplate.compile(page(PAGE))));
+    }
+    
+    @Test
+    public void shouldRejectMissingMarker(){
+        assertThrows(IOException.class, () -> PageTemplate.compile(page(PAGE), "</p>", "</i>"));
+    }
+    
+    @Test
+    public void shouldEscapeText() throws IOException{
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PageTemplate.writeEscaped(out, "a<b>&\"č\"");
+        assertEquals("a&lt;b&gt;&amp;&quot;č&quot;", out.toString(StandardCharsets.UTF_8));
+    }
+}
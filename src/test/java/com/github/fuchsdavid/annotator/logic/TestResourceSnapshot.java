@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator.logic;
+
+import com.github.fuchsdavid.annotator.Main;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObjectBuilder;
+import javax.json.stream.JsonGenerator;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author David Fuchs
+ */
+public class TestResourceSnapshot {
+    private static final String NS = "http://dbpedia.org/resource/TestResourceSnapshot_";
+    
+    private static Model resource(String name){
+        Model m = ModelFactory.createDefaultModel();
+        Resource r = m.createResource(NS + name);
+        r.addProperty(RDFS.label, name + " \"quoted\" ěšč");
+        r.addProperty(RDF.type, RDFS.Resource);
+        r.addProperty(RDFS.seeAlso, m.createResource(NS + name + "_seeAlso"));
+        r.addProperty(RDFS.comment, "comment of " + name);
+        return m;
+    }
+    
+    /**
+     * Serialize a model the way responses were built from models.
+     */
+    private static byte[] serializeModel(Model m){
+        List<Statement> statements = m.listStatements().toList();
+        statements.sort((Statement o1, Statement o2) -> {
+            return o1.getPredicate().asResource().getURI().compareTo(o2.getPredicate().asResource().getURI());
+        });
+        JsonArrayBuilder array = Main.JF.createArrayBuilder();
+        statements.forEach(statement -> {
+            JsonObjectBuilder createTriple = Main.JF.createObjectBuilder()
+                .add("subject", RDFUtilitites.getPrefixedName(statement.getSubject()));
+            createTriple.add("predicate", RDFUtilitites.getPrefixedName(statement.getPredicate()));
+            if(statement.getObject().isResource())
+                createTriple.add("object", RDFUtilitites.getPrefixedName(statement.getObject().asResource()));
+            else
+                createTriple.add("object",statement.getObject().asLiteral().getLexicalForm());
+            array.add(createTriple.build());
+        });
+        return array.build().toString().getBytes(StandardCharsets.UTF_8);
+    }
+    
+    @Test
+    public void shouldSerializeLikeModel(){
+        Model m = resource("A");
+        assertEquals(new String(serializeModel(m), StandardCharsets.UTF_8),
+                     new String(ResourceSnapshot.of(m).getTriplesJson(), StandardCharsets.UTF_8));
+    }
+    
+    @Test
+    public void shouldStreamSameBytes(){
+        ResourceSnapshot snapshot = ResourceSnapshot.of(resource("B"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(JsonGenerator generator = Main.JG.createGenerator(out, StandardCharsets.UTF_8)){
+            generator.writeStartArray();
+            snapshot.writeTriples(generator);
+            generator.writeEnd();
+        }
+        assertArrayEquals(snapshot.getTriplesJson(), out.toByteArray());
+    }
+    
+    @Test
+    public void shouldShareOnlyPredicates(){
+        ResourceSnapshot c = ResourceSnapshot.of(resource("C"));
+        ResourceSnapshot d = ResourceSnapshot.of(resource("D"));
+        assertEquals(4, c.size());
+        for(int i=0; i<c.size(); i++)
+            assertSame(c.getPredicate(i), d.getPredicate(i));
+        assertEquals(RDFUtilitites.getPrefixedName(RDF.type), d.getPredicate(0));
+        assertEquals(RDFUtilitites.getPrefixedName(RDFS.seeAlso), d.getPredicate(3));
+        assertEquals(NS + "C", c.getSubject());
+        assertEquals(List.of(RDFUtilitites.getPrefixedName(RDFS.Resource), "comment of C", "C \"quoted\" ěšč",
+                             RDFUtilitites.getPrefixedName(ResourceFactory.createResource(NS + "C_seeAlso"))),
+                     List.of(c.getObject(0), c.getObject(1), c.getObject(2), c.getObject(3)));
+        assertEquals(List.of(RDFUtilitites.getPrefixedName(RDFS.Resource), "comment of D", "D \"quoted\" ěšč",
+                             RDFUtilitites.getPrefixedName(ResourceFactory.createResource(NS + "D_seeAlso"))),
+                     List.of(d.getObject(0), d.getObject(1), d.getObject(2), d.getObject(3)));
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2019 David Fuchs
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.fuchsdavid.annotator.logic;
+
+import com.sun.net.httpserver.Headers;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author David Fuchs
+ */
+public class TestStaticResource {
+    private static final String ETAG = "\"abc\"";
+    private static final long LAST_MODIFIED = 1_600_000_000_000L;
+    
+    private static Headers headers(String... namesAndValues){
+        Headers headers = new Headers();
+        for(int i=0; i<namesAndValues.length; i+=2)
+            headers.add(namesAndValues[i], namesAndValues[i+1]);
+        return headers;
+    }
+    
+    @Test
+    public void shouldParseSingleByteRanges(){
+        assertArrayEquals(new int[]{2, 5}, StaticResource.parseRange("bytes=2-4", 10));
+        assertArrayEquals(new int[]{8, 10}, StaticResource.parseRange("bytes=8-20", 10));
+        assertArrayEquals(new int[]{3, 10}, StaticResource.parseRange("bytes=3-", 10));
+        assertArrayEquals(new int[]{5, 10}, StaticResource.parseRange("bytes=-5", 10));
+        assertArrayEquals(new int[]{0, 10}, StaticResource.parseRange("bytes=-20", 10));
+    }
+    
+    @Test
+    public void shouldRejectUnsatisfiableRanges(){
+        assertNull(StaticResource.parseRange("bytes=10-", 10));
+        assertNull(StaticResource.parseRange("bytes=5-2", 10));
+        assertNull(StaticResource.parseRange("bytes=-0", 10));
+        assertNull(StaticResource.parseRange("bytes=a-b", 10));
+        assertNull(StaticResource.parseRange("bytes=1", 10));
+    }
+    
+    @Test
+    public void shouldHonourIfRange(){
+        assertEquals("bytes=0-1", StaticResource.requestedRange(headers("Range", "bytes=0-1"), ETAG));
+        assertEquals("bytes=0-1", StaticResource.requestedRange(headers("Range", "bytes=0-1", "If-Range", ETAG), ETAG));
+        assertNull(StaticResource.requestedRange(headers("Range", "bytes=0-1", "If-Range", "\"old\""), ETAG));
+        assertNull(StaticResource.requestedRange(headers("Range", "bytes=0-1,4-5"), ETAG));
+        assertNull(StaticResource.requestedRange(headers("Range", "items=0-1"), ETAG));
+        assertNull(StaticResource.requestedRange(headers(), ETAG));
+    }
+    
+    @Test
+    public void shouldAnswerConditionalRequests(){
+        String current = StaticResource.httpDate(LAST_MODIFIED);
+        String older = StaticResource.httpDate(LAST_MODIFIED - 60000);
+        assertTrue(StaticResource.notModified(headers("If-None-Match", "\"x\", W/" + ETAG), LAST_MODIFIED, ETAG));
+        assertTrue(StaticResource.notModified(headers("If-None-Match", "*"), LAST_MODIFIED, ETAG));
+        assertFalse(StaticResource.notModified(headers("If-None-Match", "\"x\"", "If-Modified-Since", current),
+                                               LAST_MODIFIED, ETAG));
+        assertTrue(StaticResource.notModified(headers("If-Modified-Since", current), LAST_MODIFIED, ETAG));
+        assertFalse(StaticResource.notModified(headers("If-Modified-Since", older), LAST_MODIFIED, ETAG));
+        assertFalse(StaticResource.notModified(headers("If-Modified-Since", "yesterday"), LAST_MODIFIED, ETAG));
+        assertFalse(StaticResource.notModified(headers(), LAST_MODIFIED, ETAG));
+    }
+}